@@ -0,0 +1,70 @@
+#!/usr/bin/env bash
+# Mide el tiempo desde que arranca el proceso hasta el primer WebSocket aceptado (HTTP 101)
+# en /ws/chat, comparando el jar normal con el modo AOT + CDS (perfil aot-cds).
+#
+# Uso (desde backend-java, con la base de datos configurada como en el README):
+#   mvn -Paot-cds -DskipTests package
+#   RUNS=5 scripts/startup-benchmark.sh
+set -euo pipefail
+
+cd "$(dirname "$0")/.."
+
+PORT="${SERVER_PORT:-8443}"
+RUNS="${RUNS:-3}"
+TIMEOUT_S="${TIMEOUT_S:-120}"
+ARTIFACT="connect-chat-backend-0.0.1-SNAPSHOT.jar"
+CDS_DIR="target/cds"
+
+handshake() {
+  curl --http1.1 -s -o /dev/null --max-time 1 -w '%{http_code}' \
+    -H 'Connection: Upgrade' \
+    -H 'Upgrade: websocket' \
+    -H 'Sec-WebSocket-Version: 13' \
+    -H 'Sec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==' \
+    "http://localhost:${PORT}/ws/chat" || true
+}
+
+measure() {
+  local label="$1"
+  local dir="$2"
+  shift 2
+  local total=0
+  for run in $(seq 1 "$RUNS"); do
+    local start end pid
+    start=$(date +%s%N)
+    (cd "$dir" && exec "$@") > "target/startup-${label}.log" 2>&1 &
+    pid=$!
+    until [ "$(handshake)" = "101" ]; do
+      if ! kill -0 "$pid" 2>/dev/null; then
+        echo "${label}: el proceso terminó antes de aceptar conexiones (ver target/startup-${label}.log)" >&2
+        return 1
+      fi
+      if [ $(( ($(date +%s%N) - start) / 1000000000 )) -ge "$TIMEOUT_S" ]; then
+        echo "${label}: sin WebSocket tras ${TIMEOUT_S}s" >&2
+        kill "$pid"
+        return 1
+      fi
+      sleep 0.05
+    done
+    end=$(date +%s%N)
+    local elapsed=$(( (end - start) / 1000000 ))
+    total=$(( total + elapsed ))
+    echo "${label} #${run}: ${elapsed} ms hasta el primer WebSocket aceptado"
+    kill "$pid"
+    wait "$pid" 2>/dev/null || true
+  done
+  echo "${label}: media $(( total / RUNS )) ms"
+}
+
+if [ ! -f "target/${ARTIFACT}" ]; then
+  echo "Falta target/${ARTIFACT}; ejecuta antes mvn -DskipTests package" >&2
+  exit 1
+fi
+
+measure jar target java -jar "${ARTIFACT}"
+
+if [ -f "${CDS_DIR}/application.jsa" ]; then
+  measure aot-cds "${CDS_DIR}" java -XX:SharedArchiveFile=application.jsa -Dspring.aot.enabled=true -jar "${ARTIFACT}"
+else
+  echo "Sin ${CDS_DIR}/application.jsa: compila con mvn -Paot-cds -DskipTests package para medir el modo AOT + CDS"
+fi
@@ -0,0 +1,57 @@
+package com.connectchat.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import javax.sql.DataSource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+@Configuration
+@ConditionalOnExpression("!'${app.datasource.replica.url:}'.isBlank()")
+public class DataSourceConfig {
+
+  @Bean
+  @ConfigurationProperties(prefix = "spring.datasource.hikari")
+  public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+    HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    dataSource.setPoolName("primary");
+    return dataSource;
+  }
+
+  @Bean
+  public HikariDataSource replicaDataSource(
+      DataSourceProperties properties,
+      @Value("${app.datasource.replica.url}") String url,
+      @Value("${app.datasource.replica.username:${spring.datasource.username:}}") String username,
+      @Value("${app.datasource.replica.password:${spring.datasource.password:}}") String password,
+      @Value("${app.datasource.replica.maximum-pool-size:10}") int maximumPoolSize
+  ) {
+    HikariDataSource dataSource = new HikariDataSource();
+    dataSource.setJdbcUrl(url);
+    dataSource.setUsername(username);
+    dataSource.setPassword(password);
+    dataSource.setDriverClassName(properties.determineDriverClassName());
+    dataSource.setMaximumPoolSize(maximumPoolSize);
+    dataSource.setReadOnly(true);
+    dataSource.setPoolName("replica");
+    return dataSource;
+  }
+
+  @Bean
+  @Primary
+  public DataSource dataSource(
+      @Qualifier("primaryDataSource") DataSource primary,
+      @Qualifier("replicaDataSource") DataSource replica,
+      ReadYourWritesTracker tracker
+  ) {
+    var routing = new ReadWriteRoutingDataSource(primary, replica, tracker);
+    routing.afterPropertiesSet();
+    return new LazyConnectionDataSourceProxy(routing);
+  }
+}
@@ -0,0 +1,22 @@
+package com.connectchat.config;
+
+import java.util.Map;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "app.rate-limit")
+public record RateLimitProperties(
+    boolean enabled,
+    Budget defaults,
+    Map<String, Budget> events
+) {
+  public RateLimitProperties {
+    defaults = defaults == null ? new Budget(30, 10) : defaults;
+    events = events == null ? Map.of() : Map.copyOf(events);
+  }
+
+  public Budget budgetFor(String event) {
+    return events.getOrDefault(event, defaults);
+  }
+
+  public record Budget(int capacity, double refillPerSecond) {}
+}
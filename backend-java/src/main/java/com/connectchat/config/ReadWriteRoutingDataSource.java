@@ -0,0 +1,27 @@
+package com.connectchat.config;
+
+import java.util.Map;
+import javax.sql.DataSource;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource {
+  static final String PRIMARY = "primary";
+  static final String REPLICA = "replica";
+
+  private final ReadYourWritesTracker tracker;
+
+  public ReadWriteRoutingDataSource(DataSource primary, DataSource replica, ReadYourWritesTracker tracker) {
+    this.tracker = tracker;
+    setTargetDataSources(Map.of(PRIMARY, primary, REPLICA, replica));
+    setDefaultTargetDataSource(primary);
+  }
+
+  @Override
+  protected Object determineCurrentLookupKey() {
+    if (TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+      return tracker.pinnedToPrimary() ? PRIMARY : REPLICA;
+    }
+    return PRIMARY;
+  }
+}
@@ -0,0 +1,60 @@
+package com.connectchat.config;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+@Component
+public class ReadYourWritesTracker {
+  private final ThreadLocal<String> currentUser = new ThreadLocal<>();
+  private final Map<String, Long> lastWriteAt = new ConcurrentHashMap<>();
+  private final AtomicLong lastSweep = new AtomicLong();
+  private final long windowMs;
+
+  public ReadYourWritesTracker(@Value("${app.datasource.read-your-writes-ms:5000}") long windowMs) {
+    this.windowMs = windowMs;
+  }
+
+  public void bind(String userId) {
+    if (userId == null) {
+      currentUser.remove();
+    } else {
+      currentUser.set(userId);
+    }
+  }
+
+  public void clear() {
+    currentUser.remove();
+  }
+
+  public void markWrite() {
+    markWrite(currentUser.get());
+  }
+
+  public void markWrite(String userId) {
+    if (userId != null) {
+      lastWriteAt.put(userId, System.currentTimeMillis());
+    }
+  }
+
+  public boolean pinnedToPrimary() {
+    String userId = currentUser.get();
+    if (userId == null) {
+      return false;
+    }
+    long now = System.currentTimeMillis();
+    sweep(now);
+    Long last = lastWriteAt.get(userId);
+    return last != null && now - last < windowMs;
+  }
+
+  private void sweep(long now) {
+    long last = lastSweep.get();
+    if (now - last < windowMs || !lastSweep.compareAndSet(last, now)) {
+      return;
+    }
+    lastWriteAt.values().removeIf(writtenAt -> now - writtenAt >= windowMs);
+  }
+}
@@ -3,6 +3,8 @@ package com.connectchat.config;
 import com.connectchat.ws.ChatWebSocketHandler;
 import java.util.List;
 import java.util.Map;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.server.ServerHttpRequest;
 import org.springframework.http.server.ServletServerHttpRequest;
@@ -11,6 +13,7 @@ import org.springframework.web.socket.config.annotation.EnableWebSocket;
 import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
 import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
 import org.springframework.web.socket.server.HandshakeInterceptor;
+import org.springframework.web.socket.server.standard.ServletServerContainerFactoryBean;
 
 @Configuration
 @EnableWebSocket
@@ -28,6 +31,18 @@ public class WebSocketConfig implements WebSocketConfigurer {
         .addInterceptors(new TokenHandshakeInterceptor());
   }
 
+  @Bean
+  public ServletServerContainerFactoryBean webSocketContainer(
+      @Value("${app.blobs.chunk-size:65536}") int chunkSize,
+      @Value("${app.ws.max-text-bytes:8192}") int maxTextBytes
+  ) {
+    var container = new ServletServerContainerFactoryBean();
+    container.setMaxBinaryMessageBufferSize(chunkSize + Integer.BYTES);
+    // Tomcat reserva este buffer por socket; las importaciones masivas van por HTTP.
+    container.setMaxTextMessageBufferSize(maxTextBytes);
+    return container;
+  }
+
   static class TokenHandshakeInterceptor implements HandshakeInterceptor {
     @Override
     public boolean beforeHandshake(ServerHttpRequest request, org.springframework.http.server.ServerHttpResponse response,
@@ -44,6 +59,10 @@ public class WebSocketConfig implements WebSocketConfigurer {
         if (token != null && !token.isBlank()) {
           attributes.put("token", token);
         }
+        String resume = httpRequest.getParameter("resume");
+        if (resume != null && !resume.isBlank()) {
+          attributes.put("resume", resume);
+        }
       }
       return true;
     }
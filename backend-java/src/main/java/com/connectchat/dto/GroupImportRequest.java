@@ -0,0 +1,5 @@
+package com.connectchat.dto;
+
+import java.util.List;
+
+public record GroupImportRequest(List<String> userIds) {}
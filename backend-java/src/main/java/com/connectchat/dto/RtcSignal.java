@@ -1,10 +0,0 @@
-package com.connectchat.dto;
-
-public record RtcSignal(
-    String type,
-    String chatId,
-    String fromUserId,
-    String toUserId,
-    String callType,
-    Object payload
-) {}
\ No newline at end of file
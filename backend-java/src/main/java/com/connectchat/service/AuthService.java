@@ -1,11 +1,12 @@
 package com.connectchat.service;
 
+import com.connectchat.config.ReadYourWritesTracker;
 import com.connectchat.model.User;
 import com.connectchat.model.UserEntity;
 import com.connectchat.repository.UserRepository;
 import com.connectchat.security.JwtService;
-import java.util.UUID;
 import java.util.regex.Pattern;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -17,11 +18,24 @@ public class AuthService {
   private final BCryptPasswordEncoder encoder;
   private final JwtService jwtService;
   private final UserRepository userRepository;
-
-  public AuthService(BCryptPasswordEncoder encoder, JwtService jwtService, UserRepository userRepository) {
+  private final IdGenerator ids;
+  private final UserDirectory userDirectory;
+  private final ReadYourWritesTracker readYourWrites;
+
+  public AuthService(
+      BCryptPasswordEncoder encoder,
+      JwtService jwtService,
+      @Lazy UserRepository userRepository,
+      IdGenerator ids,
+      UserDirectory userDirectory,
+      ReadYourWritesTracker readYourWrites
+  ) {
     this.encoder = encoder;
     this.jwtService = jwtService;
     this.userRepository = userRepository;
+    this.ids = ids;
+    this.userDirectory = userDirectory;
+    this.readYourWrites = readYourWrites;
   }
 
   @Transactional
@@ -67,7 +81,7 @@ public class AuthService {
     }
 
     UserEntity entity = new UserEntity();
-    entity.setId(UUID.randomUUID().toString());
+    entity.setId(ids.next());
     entity.setUsername(normalizedUsername);
     entity.setDisplayName(normalizedDisplayName);
     entity.setEmail(normalizedEmail);
@@ -75,6 +89,9 @@ public class AuthService {
     entity.setPasswordHash(encoder.encode(password));
 
     UserEntity saved = userRepository.save(entity);
+    readYourWrites.markWrite(saved.getId());
+    TransactionHooks.afterCommit(() ->
+        userDirectory.put(saved.getId(), saved.getUsername(), saved.getDisplayName(), saved.getAvatarUrl()));
     return toPublicUser(saved);
   }
 
@@ -98,10 +115,7 @@ public class AuthService {
       throw new IllegalArgumentException("Usuario o contraseña incorrectos");
     }
 
-    entity.setStatus("online");
-    userRepository.save(entity);
-
-    return toPublicUser(entity);
+    return toPublicUser(entity, "online");
   }
 
   public String tokenFor(User user) {
@@ -117,12 +131,16 @@ public class AuthService {
   }
 
   private User toPublicUser(UserEntity entity) {
+    return toPublicUser(entity, entity.getStatus());
+  }
+
+  private User toPublicUser(UserEntity entity, String status) {
     return new User(
         entity.getId(),
         entity.getUsername(),
         entity.getDisplayName(),
         entity.getAvatarUrl(),
-        entity.getStatus()
+        status
     );
   }
 }
\ No newline at end of file
@@ -0,0 +1,28 @@
+package com.connectchat.service;
+
+import java.io.IOException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Component
+public class BlobCollector {
+  private final BlobStore blobStore;
+  private final ChatDataService chatDataService;
+  private final long orphanTtlMs;
+
+  public BlobCollector(
+      BlobStore blobStore,
+      ChatDataService chatDataService,
+      @Value("${app.blobs.orphan-ttl-ms:86400000}") long orphanTtlMs
+  ) {
+    this.blobStore = blobStore;
+    this.chatDataService = chatDataService;
+    this.orphanTtlMs = orphanTtlMs;
+  }
+
+  @Scheduled(fixedDelayString = "${app.blobs.gc-interval-ms:3600000}")
+  public void collect() throws IOException {
+    blobStore.collect(orphanTtlMs, chatDataService::referencedBlobs);
+  }
+}
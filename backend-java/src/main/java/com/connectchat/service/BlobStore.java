@@ -0,0 +1,281 @@
+package com.connectchat.service;
+
+import jakarta.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+@Component
+public class BlobStore {
+  private static final Pattern HASH = Pattern.compile("^[0-9a-f]{64}$");
+
+  private static final Pattern SHARD = Pattern.compile("^[0-9a-f]{2}$");
+  private static final int COLLECT_BATCH = 500;
+
+  private final Path root;
+  private final Path incoming;
+  private final long maxBytes;
+  private final long quotaBytes;
+  private final long quotaWindowMs;
+  private final Map<String, Usage> usage = new ConcurrentHashMap<>();
+  private final AtomicLong lastSweep = new AtomicLong();
+  // Serializa el borrado de huérfanos con retain/commit para no borrar un blob que se acaba de usar.
+  private final Object collectLock = new Object();
+
+  public BlobStore(
+      @Value("${app.blobs.directory:data/blobs}") String directory,
+      @Value("${app.blobs.max-bytes:26214400}") long maxBytes,
+      @Value("${app.blobs.user-quota-bytes:268435456}") long quotaBytes,
+      @Value("${app.blobs.quota-window-ms:3600000}") long quotaWindowMs
+  ) {
+    this.root = Path.of(directory).toAbsolutePath().normalize();
+    this.incoming = root.resolve("incoming");
+    this.maxBytes = maxBytes;
+    this.quotaBytes = quotaBytes;
+    this.quotaWindowMs = quotaWindowMs;
+  }
+
+  @PostConstruct
+  public void purgeIncoming() throws IOException {
+    if (!Files.isDirectory(incoming)) {
+      return;
+    }
+    try (Stream<Path> files = Files.list(incoming)) {
+      for (Path file : (Iterable<Path>) files::iterator) {
+        Files.deleteIfExists(file);
+      }
+    }
+  }
+
+  public Upload begin(String ownerId, long size) {
+    if (size <= 0 || size > maxBytes) {
+      throw new IllegalArgumentException("tamaño de archivo inválido (máximo " + maxBytes + " bytes)");
+    }
+    reserve(ownerId, size);
+    try {
+      Files.createDirectories(incoming);
+      return new Upload(incoming.resolve(UUID.randomUUID().toString()), size);
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+  }
+
+  public Path resolve(String hash) {
+    if (hash == null || !HASH.matcher(hash).matches()) {
+      return null;
+    }
+    Path path = pathFor(hash);
+    return Files.isRegularFile(path) ? path : null;
+  }
+
+  public long retain(String hash) {
+    synchronized (collectLock) {
+      Path path = resolve(hash);
+      if (path == null) {
+        throw new IllegalArgumentException("adjunto no encontrado");
+      }
+      try {
+        Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+        return Files.size(path);
+      } catch (IOException ex) {
+        throw new UncheckedIOException(ex);
+      }
+    }
+  }
+
+  public int collect(long olderThanMs, Function<Collection<String>, Set<String>> referenced) throws IOException {
+    if (!Files.isDirectory(root)) {
+      return 0;
+    }
+    long cutoff = System.currentTimeMillis() - olderThanMs;
+    int deleted = 0;
+    List<String> candidates = new ArrayList<>();
+    try (Stream<Path> shards = Files.list(root)) {
+      for (Path shard : (Iterable<Path>) shards::iterator) {
+        String name = shard.getFileName().toString();
+        if (name.equals("incoming")) {
+          deleted += deleteStale(shard, cutoff);
+          continue;
+        }
+        if (!SHARD.matcher(name).matches() || !Files.isDirectory(shard)) {
+          continue;
+        }
+        try (Stream<Path> files = Files.list(shard)) {
+          for (Path file : (Iterable<Path>) files::iterator) {
+            String hash = file.getFileName().toString();
+            if (HASH.matcher(hash).matches() && modifiedBefore(file, cutoff)) {
+              candidates.add(hash);
+            }
+            if (candidates.size() >= COLLECT_BATCH) {
+              deleted += deleteUnreferenced(candidates, referenced, cutoff);
+              candidates.clear();
+            }
+          }
+        }
+      }
+    }
+    return deleted + deleteUnreferenced(candidates, referenced, cutoff);
+  }
+
+  private int deleteUnreferenced(List<String> hashes, Function<Collection<String>, Set<String>> referenced, long cutoff)
+      throws IOException {
+    if (hashes.isEmpty()) {
+      return 0;
+    }
+    Set<String> keep = referenced.apply(hashes);
+    int deleted = 0;
+    for (String hash : hashes) {
+      if (keep.contains(hash)) {
+        continue;
+      }
+      Path path = pathFor(hash);
+      synchronized (collectLock) {
+        if (modifiedBefore(path, cutoff) && Files.deleteIfExists(path)) {
+          deleted++;
+        }
+      }
+    }
+    return deleted;
+  }
+
+  private int deleteStale(Path directory, long cutoff) throws IOException {
+    int deleted = 0;
+    try (Stream<Path> files = Files.list(directory)) {
+      for (Path file : (Iterable<Path>) files::iterator) {
+        if (modifiedBefore(file, cutoff) && Files.deleteIfExists(file)) {
+          deleted++;
+        }
+      }
+    }
+    return deleted;
+  }
+
+  private static boolean modifiedBefore(Path file, long cutoff) {
+    try {
+      return Files.getLastModifiedTime(file).toMillis() < cutoff;
+    } catch (IOException ex) {
+      return false;
+    }
+  }
+
+  private void reserve(String ownerId, long size) {
+    long now = System.currentTimeMillis();
+    sweep(now);
+    boolean[] granted = {false};
+    usage.compute(ownerId, (id, current) -> {
+      if (current == null || now - current.windowStart() >= quotaWindowMs) {
+        current = new Usage(now, 0);
+      }
+      if (current.bytes() + size > quotaBytes) {
+        return current;
+      }
+      granted[0] = true;
+      return new Usage(current.windowStart(), current.bytes() + size);
+    });
+    if (!granted[0]) {
+      throw new IllegalArgumentException("cuota de subida agotada, intenta de nuevo más tarde");
+    }
+  }
+
+  private void sweep(long now) {
+    long last = lastSweep.get();
+    if (now - last < quotaWindowMs || !lastSweep.compareAndSet(last, now)) {
+      return;
+    }
+    usage.values().removeIf(current -> now - current.windowStart() >= quotaWindowMs);
+  }
+
+  private Path pathFor(String hash) {
+    return root.resolve(hash.substring(0, 2)).resolve(hash);
+  }
+
+  private record Usage(long windowStart, long bytes) {}
+
+  public final class Upload {
+    private final Path temp;
+    private final long expected;
+    private final FileChannel channel;
+    private final MessageDigest digest;
+    private long received;
+
+    private Upload(Path temp, long expected) throws IOException {
+      this.temp = temp;
+      this.expected = expected;
+      this.channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+      try {
+        this.digest = MessageDigest.getInstance("SHA-256");
+      } catch (NoSuchAlgorithmException ex) {
+        throw new IllegalStateException(ex);
+      }
+    }
+
+    public long expected() {
+      return expected;
+    }
+
+    public synchronized boolean append(ByteBuffer chunk) throws IOException {
+      if (received + chunk.remaining() > expected) {
+        abort();
+        throw new IllegalArgumentException("el archivo supera el tamaño declarado");
+      }
+      digest.update(chunk.duplicate());
+      while (chunk.hasRemaining()) {
+        received += channel.write(chunk);
+      }
+      return received == expected;
+    }
+
+    public synchronized String commit() throws IOException {
+      channel.force(false);
+      channel.close();
+      String hash = HexFormat.of().formatHex(digest.digest());
+      Path target = pathFor(hash);
+      synchronized (collectLock) {
+        if (Files.exists(target)) {
+          // Reinicia el plazo de huérfano: el blob deduplicado vuelve a estar en uso.
+          Files.setLastModifiedTime(target, FileTime.fromMillis(System.currentTimeMillis()));
+          Files.deleteIfExists(temp);
+          return hash;
+        }
+        Files.createDirectories(target.getParent());
+        try {
+          Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException ex) {
+          Files.deleteIfExists(temp);
+        }
+      }
+      return hash;
+    }
+
+    public synchronized void abort() {
+      try {
+        channel.close();
+        Files.deleteIfExists(temp);
+      } catch (IOException ignored) {
+      }
+    }
+  }
+}
@@ -0,0 +1,64 @@
+package com.connectchat.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+final class BoundedCache<K, V> {
+  private final Map<K, Entry<V>> entries = new ConcurrentHashMap<>();
+  private final AtomicLong version = new AtomicLong();
+  private final AtomicLong lastSweep = new AtomicLong();
+  private final long ttlMs;
+  private final int maxEntries;
+
+  BoundedCache(long ttlMs, int maxEntries) {
+    this.ttlMs = ttlMs;
+    this.maxEntries = maxEntries;
+  }
+
+  V get(K key) {
+    var entry = entries.get(key);
+    if (entry == null) {
+      return null;
+    }
+    if (System.currentTimeMillis() - entry.cachedAt() >= ttlMs) {
+      entries.remove(key, entry);
+      return null;
+    }
+    return entry.value();
+  }
+
+  long version() {
+    return version.get();
+  }
+
+  void put(K key, V value) {
+    put(key, value, version.get());
+  }
+
+  void put(K key, V value, long observedVersion) {
+    long now = System.currentTimeMillis();
+    sweep(now);
+    if (entries.size() >= maxEntries) {
+      return;
+    }
+    entries.compute(key, (k, current) -> version.get() == observedVersion ? new Entry<>(value, now) : current);
+  }
+
+  void invalidate(K key) {
+    entries.compute(key, (k, current) -> {
+      version.incrementAndGet();
+      return null;
+    });
+  }
+
+  private void sweep(long now) {
+    long last = lastSweep.get();
+    if (now - last < ttlMs || !lastSweep.compareAndSet(last, now)) {
+      return;
+    }
+    entries.values().removeIf(entry -> now - entry.cachedAt() >= ttlMs);
+  }
+
+  private record Entry<V>(V value, long cachedAt) {}
+}
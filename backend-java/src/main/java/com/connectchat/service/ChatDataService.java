@@ -1,29 +1,70 @@
 package com.connectchat.service;
 
+import com.connectchat.config.ReadYourWritesTracker;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Transactional;
 
 @Service
 public class ChatDataService {
   private final JdbcTemplate jdbc;
+  private final IdGenerator ids;
+  private final PresenceTracker presence;
+  private final ReadYourWritesTracker readYourWrites;
+  private final BoundedCache<String, Set<String>> memberIdsCache;
+  private final BoundedCache<String, String> directChatIds;
+  private final int largeGroupThreshold;
+  private final int memberBatchSize;
+  private final int importMaxMembers;
+  private final String messageIdColumn;
+  private final String messageIdParam;
 
-  public ChatDataService(JdbcTemplate jdbc) {
+  public ChatDataService(
+      JdbcTemplate jdbc,
+      IdGenerator ids,
+      PresenceTracker presence,
+      ReadYourWritesTracker readYourWrites,
+      @Value("${app.groups.large-threshold:200}") int largeGroupThreshold,
+      @Value("${app.groups.member-batch-size:500}") int memberBatchSize,
+      @Value("${app.groups.import-max-members:20000}") int importMaxMembers,
+      @Value("${app.ids.message-storage:char}") String messageIdStorage,
+      @Value("${app.cache.ttl-ms:300000}") long cacheTtlMs,
+      @Value("${app.cache.max-entries:10000}") int cacheMaxEntries
+  ) {
     this.jdbc = jdbc;
+    this.ids = ids;
+    this.presence = presence;
+    this.readYourWrites = readYourWrites;
+    this.largeGroupThreshold = largeGroupThreshold;
+    this.memberBatchSize = memberBatchSize;
+    this.importMaxMembers = importMaxMembers;
+    boolean binaryIds = "binary".equalsIgnoreCase(messageIdStorage);
+    this.messageIdColumn = binaryIds ? "BIN_TO_UUID(m.id) AS id" : "m.id";
+    this.messageIdParam = binaryIds ? "UUID_TO_BIN(?)" : "?";
+    this.memberIdsCache = new BoundedCache<>(cacheTtlMs, cacheMaxEntries);
+    this.directChatIds = new BoundedCache<>(cacheTtlMs, cacheMaxEntries);
   }
 
+  @Transactional(readOnly = true)
   public List<Map<String, Object>> listUsers() {
     return jdbc.query(
         """
-            SELECT id, username, displayName, avatarUrl, status
+            SELECT id, username, displayName, avatarUrl
             FROM users
             ORDER BY created_at DESC
             """,
@@ -31,6 +72,7 @@ public class ChatDataService {
     );
   }
 
+  @Transactional(readOnly = true)
   public List<Map<String, Object>> listChatsForUser(String userId) {
     var chats = jdbc.query(
         """
@@ -71,7 +113,7 @@ public class ChatDataService {
 
     for (var chat : chats) {
       var chatId = (String) chat.get("id");
-      chat.put("members", membersForChat(chatId));
+      attachMembers(chat, chatId);
       var last = lastMessage(chatId);
       if (last != null) {
         chat.put("lastMessage", last);
@@ -84,7 +126,7 @@ public class ChatDataService {
   public List<Map<String, Object>> membersForChat(String chatId) {
     return jdbc.query(
         """
-            SELECT u.id, u.username, u.displayName, u.avatarUrl, u.status
+            SELECT u.id, u.username, u.displayName, u.avatarUrl
             FROM chat_members cm
             JOIN users u ON u.id = cm.userId
             WHERE cm.chatId = ?
@@ -95,24 +137,107 @@ public class ChatDataService {
     );
   }
 
-  public List<Map<String, Object>> listMessages(String chatId, int limit) {
-    int safeLimit = Math.max(1, Math.min(limit, 500));
+  private List<Map<String, Object>> membersPreview(String chatId, int limit) {
     return jdbc.query(
+        """
+            SELECT u.id, u.username, u.displayName, u.avatarUrl
+            FROM chat_members cm
+            JOIN users u ON u.id = cm.userId
+            WHERE cm.chatId = ?
+            ORDER BY cm.joined_at ASC
+            LIMIT ?
+            """,
+        this::mapUser,
+        chatId,
+        limit
+    );
+  }
+
+  private int memberCount(String chatId) {
+    var cached = TransactionHooks.inWriteTransaction() ? null : memberIdsCache.get(chatId);
+    if (cached != null) {
+      return cached.size();
+    }
+    Integer count = jdbc.queryForObject("SELECT COUNT(*) FROM chat_members WHERE chatId = ?", Integer.class, chatId);
+    return count == null ? 0 : count;
+  }
+
+  private void attachMembers(Map<String, Object> chat, String chatId) {
+    int memberCount = memberCount(chatId);
+    chat.put("memberCount", memberCount);
+    if (memberCount > largeGroupThreshold) {
+      chat.put("members", membersPreview(chatId, largeGroupThreshold));
+      chat.put("membersTruncated", true);
+    } else {
+      chat.put("members", membersForChat(chatId));
+    }
+  }
+
+  public Set<String> memberIdsForChat(String chatId) {
+    if (!TransactionHooks.inWriteTransaction()) {
+      var cached = memberIdsCache.get(chatId);
+      if (cached != null) {
+        return cached;
+      }
+    }
+    long version = memberIdsCache.version();
+    Set<String> memberIds = Set.copyOf(jdbc.query(
+        "SELECT userId FROM chat_members WHERE chatId = ?",
+        (rs, rowNum) -> rs.getString("userId"),
+        chatId
+    ));
+    if (!memberIds.isEmpty() && !TransactionHooks.inTransaction()) {
+      memberIdsCache.put(chatId, memberIds, version);
+    }
+    return memberIds;
+  }
+
+  private void invalidateMembers(String chatId) {
+    TransactionHooks.afterCommit(() -> memberIdsCache.invalidate(chatId));
+  }
+
+  public boolean isMember(String chatId, String userId) {
+    return memberIdsForChat(chatId).contains(userId);
+  }
+
+  @Transactional(readOnly = true)
+  public List<Map<String, Object>> listMessages(String chatId, int limit, String beforeId) {
+    int safeLimit = Math.max(1, Math.min(limit, 500));
+    List<Object> args = new ArrayList<>(List.of(chatId));
+    String cursor = "";
+    if (beforeId != null && !beforeId.isBlank()) {
+      cursor = "AND m.id < " + messageIdParam;
+      args.add(messageCursor(beforeId));
+    }
+    args.add(safeLimit);
+    var page = new ArrayList<>(jdbc.query(
         """
-            SELECT m.id, m.chatId, m.senderId, u.displayName AS senderName, m.kind, m.content, m.createdAt
+            SELECT %s, m.chatId, m.senderId, u.displayName AS senderName, m.kind, m.content, m.createdAt
             FROM messages m
             JOIN users u ON u.id = m.senderId
-            WHERE m.chatId = ?
-            ORDER BY m.createdAt DESC
+            WHERE m.chatId = ? %s
+            ORDER BY m.id DESC
             LIMIT ?
-            """,
+            """.formatted(messageIdColumn, cursor),
         (rs, rowNum) -> mapMessage(rs),
-        chatId,
-        safeLimit
-    ).stream().sorted((a, b) -> Long.compare(
-        ((Number) a.get("createdAt")).longValue(),
-        ((Number) b.get("createdAt")).longValue()
-    )).toList();
+        args.toArray()
+    ));
+    Collections.reverse(page);
+    return page;
+  }
+
+  static String messageCursor(String beforeId) {
+    UUID id;
+    try {
+      id = UUID.fromString(beforeId);
+    } catch (IllegalArgumentException ex) {
+      throw new IllegalArgumentException("cursor inválido");
+    }
+    // UUID.fromString acepta formas abreviadas ("1-1-1-1-1"); el cursor debe ser el id tal como se envió.
+    if (!id.toString().equalsIgnoreCase(beforeId)) {
+      throw new IllegalArgumentException("cursor inválido");
+    }
+    return id.toString();
   }
 
   private boolean userExists(String userId) {
@@ -128,40 +253,63 @@ public class ChatDataService {
     ).stream().findFirst().orElse("Direct chat");
   }
 
-  @Transactional
+  @Transactional(isolation = Isolation.READ_COMMITTED)
   public Map<String, Object> createDirectChat(String fromUserId, String targetUserId) {
     if (targetUserId == null || targetUserId.isBlank() || fromUserId.equals(targetUserId)) {
       throw new IllegalArgumentException("usuario destino inválido");
     }
+    String pairKey = pairKey(fromUserId, targetUserId);
+    String cached = directChatIds.get(pairKey);
+    if (cached != null) {
+      return chatById(cached);
+    }
     if (!userExists(targetUserId)) {
       throw new IllegalArgumentException("usuario destino no existe");
     }
-    var existing = jdbc.query(
-        """
-            SELECT c.id
-            FROM chats c
-            JOIN chat_members cm1 ON cm1.chatId = c.id AND cm1.userId = ?
-            JOIN chat_members cm2 ON cm2.chatId = c.id AND cm2.userId = ?
-            WHERE c.type = 'direct'
-            LIMIT 1
-            """,
-        (rs, rowNum) -> rs.getString("id"),
-        fromUserId,
-        targetUserId
-    );
-
-    if (!existing.isEmpty()) {
-      return chatById(existing.get(0));
+    String existing = directChatId(pairKey);
+    if (existing != null) {
+      cacheDirectChat(pairKey, existing);
+      return chatById(existing);
     }
 
-    String chatId = UUID.randomUUID().toString();
-    jdbc.update("INSERT INTO chats (id, type, title, description) VALUES (?, 'direct', ?, NULL)",
-        chatId, userDisplayName(targetUserId));
+    String chatId = ids.next();
+    try {
+      jdbc.update("INSERT INTO chats (id, type, pairKey, title, description) VALUES (?, 'direct', ?, ?, NULL)",
+          chatId, pairKey, userDisplayName(targetUserId));
+    } catch (DuplicateKeyException ex) {
+      // Otra sesión creó el mismo chat a la vez; con READ COMMITTED ya vemos su fila confirmada.
+      String winner = directChatId(pairKey);
+      if (winner == null) {
+        throw ex;
+      }
+      readYourWrites.markWrite();
+      cacheDirectChat(pairKey, winner);
+      return chatById(winner);
+    }
     jdbc.update("INSERT INTO chat_members (chatId, userId, role) VALUES (?, ?, 'member')", chatId, fromUserId);
     jdbc.update("INSERT INTO chat_members (chatId, userId, role) VALUES (?, ?, 'member')", chatId, targetUserId);
+    readYourWrites.markWrite();
+    invalidateMembers(chatId);
+    cacheDirectChat(pairKey, chatId);
     return chatById(chatId);
   }
 
+  private void cacheDirectChat(String pairKey, String chatId) {
+    TransactionHooks.afterCommit(() -> directChatIds.put(pairKey, chatId));
+  }
+
+  private String directChatId(String pairKey) {
+    return jdbc.query(
+        "SELECT id FROM chats WHERE pairKey = ?",
+        (rs, rowNum) -> rs.getString("id"),
+        pairKey
+    ).stream().findFirst().orElse(null);
+  }
+
+  static String pairKey(String userId, String otherUserId) {
+    return userId.compareTo(otherUserId) <= 0 ? userId + ":" + otherUserId : otherUserId + ":" + userId;
+  }
+
   @Transactional
   public Map<String, Object> createGroup(String ownerUserId, String title, String description, List<String> memberIds) {
     String normalizedTitle = title == null ? "" : title.trim();
@@ -169,37 +317,97 @@ public class ChatDataService {
       throw new IllegalArgumentException("título de grupo requerido");
     }
 
-    String chatId = UUID.randomUUID().toString();
+    String chatId = ids.next();
     jdbc.update("INSERT INTO chats (id, type, title, description) VALUES (?, 'group', ?, ?)", chatId, normalizedTitle, description);
     jdbc.update("INSERT INTO chat_members (chatId, userId, role) VALUES (?, ?, 'owner')", chatId, ownerUserId);
+    readYourWrites.markWrite();
 
-    for (String memberId : memberIds) {
-      if (!ownerUserId.equals(memberId)) {
-        jdbc.update(
-            "INSERT IGNORE INTO chat_members (chatId, userId, role) VALUES (?, ?, 'member')",
-            chatId,
-            memberId
-        );
-      }
-    }
+    var others = memberIds.stream().filter(memberId -> !ownerUserId.equals(memberId)).toList();
+    insertMembers(chatId, others);
 
+    invalidateMembers(chatId);
     return chatById(chatId);
   }
 
   @Transactional
   public Map<String, Object> inviteToGroup(String chatId, List<String> userIds) {
-    for (String userId : userIds) {
-      jdbc.update("INSERT IGNORE INTO chat_members (chatId, userId, role) VALUES (?, ?, 'member')", chatId, userId);
+    var before = requireGroupMemberIds(chatId);
+    insertMembers(chatId, userIds);
+    invalidateMembers(chatId);
+    var chat = chatById(chatId);
+    chat.put("addedMemberIds", addedSince(chatId, before));
+    return chat;
+  }
+
+  public Map<String, Object> importGroupMembers(String chatId, String actorUserId, List<String> userIds) {
+    if (userIds.size() > importMaxMembers) {
+      throw new IllegalArgumentException("demasiados miembros para importar (máximo " + importMaxMembers + ")");
     }
-    return chatById(chatId);
+    var before = requireGroupMemberIds(chatId);
+    requireGroupManager(chatId, actorUserId);
+    int added = insertMembers(chatId, userIds);
+    invalidateMembers(chatId);
+    Map<String, Object> result = new LinkedHashMap<>();
+    result.put("chatId", chatId);
+    result.put("addedCount", added);
+    result.put("memberCount", memberIdsForChat(chatId).size());
+    if (added <= largeGroupThreshold) {
+      result.put("addedMemberIds", addedSince(chatId, before));
+    }
+    return result;
+  }
+
+  private Set<String> requireGroupMemberIds(String chatId) {
+    var types = jdbc.query("SELECT type FROM chats WHERE id = ?", (rs, rowNum) -> rs.getString("type"), chatId);
+    if (types.isEmpty() || !"group".equals(types.get(0))) {
+      throw new IllegalArgumentException("grupo no encontrado");
+    }
+    return memberIdsForChat(chatId);
+  }
+
+  private void requireGroupManager(String chatId, String userId) {
+    var roles = jdbc.query(
+        "SELECT role FROM chat_members WHERE chatId = ? AND userId = ?",
+        (rs, rowNum) -> rs.getString("role"),
+        chatId,
+        userId
+    );
+    if (roles.isEmpty() || "member".equals(roles.get(0))) {
+      throw new IllegalArgumentException("solo el dueño o un admin del grupo puede importar miembros");
+    }
+  }
+
+  private List<String> addedSince(String chatId, Set<String> before) {
+    return memberIdsForChat(chatId).stream().filter(memberId -> !before.contains(memberId)).toList();
+  }
+
+  private int insertMembers(String chatId, Collection<String> userIds) {
+    var pending = new ArrayList<>(new LinkedHashSet<>(userIds));
+    int inserted = 0;
+    for (int from = 0; from < pending.size(); from += memberBatchSize) {
+      var batch = pending.subList(from, Math.min(from + memberBatchSize, pending.size()));
+      String placeholders = String.join(", ", Collections.nCopies(batch.size(), "?"));
+      List<Object> args = new ArrayList<>(batch.size() + 1);
+      args.add(chatId);
+      args.addAll(batch);
+      inserted += jdbc.update(
+          "INSERT IGNORE INTO chat_members (chatId, userId, role) SELECT ?, u.id, 'member' FROM users u WHERE u.id IN ("
+              + placeholders + ")",
+          args.toArray()
+      );
+    }
+    if (inserted > 0) {
+      readYourWrites.markWrite();
+    }
+    return inserted;
   }
 
   @Transactional
-  public Map<String, Object> createMessage(String chatId, String senderId, String kind, String content) {
-    String msgId = UUID.randomUUID().toString();
+  public Map<String, Object> createMessage(String chatId, String senderId, String kind, String content, String blobHash) {
+    String msgId = ids.next();
     long now = System.currentTimeMillis();
     jdbc.update(
-        "INSERT INTO messages (id, chatId, senderId, kind, content, createdAt) VALUES (?, ?, ?, ?, ?, ?)",
+        "INSERT INTO messages (id, chatId, senderId, kind, content, createdAt) VALUES (" + messageIdParam + ", ?, ?, ?, ?, ?)",
         msgId,
         chatId,
         senderId,
@@ -207,16 +415,43 @@ public class ChatDataService {
         content,
         now
     );
+    if (blobHash != null) {
+      jdbc.update("INSERT IGNORE INTO blob_refs (hash, chatId) VALUES (?, ?)", blobHash, chatId);
+    }
+    readYourWrites.markWrite();
     return messageById(msgId);
   }
 
-  public void updateUserStatus(String userId, String status) {
-    jdbc.update("UPDATE users SET status = ? WHERE id = ?", status, userId);
-  }
-
+  public Set<String> referencedBlobs(Collection<String> hashes) {
+    if (hashes.isEmpty()) {
+      return Set.of();
+    }
+    String placeholders = String.join(", ", Collections.nCopies(hashes.size(), "?"));
+    return Set.copyOf(jdbc.query(
+        "SELECT DISTINCT hash FROM blob_refs WHERE hash IN (" + placeholders + ")",
+        (rs, rowNum) -> rs.getString("hash"),
+        hashes.toArray()
+    ));
+  }
+
+  public boolean canReadBlob(String userId, String hash) {
+    Integer count = jdbc.queryForObject(
+        """
+            SELECT COUNT(*)
+            FROM blob_refs br
+            JOIN chat_members cm ON cm.chatId = br.chatId AND cm.userId = ?
+            WHERE br.hash = ?
+            """,
+        Integer.class,
+        userId,
+        hash
+    );
+    return count != null && count > 0;
+  }
+
   public Map<String, Object> userById(String userId) {
     var users = jdbc.query(
-        "SELECT id, username, displayName, avatarUrl, status FROM users WHERE id = ? LIMIT 1",
+        "SELECT id, username, displayName, avatarUrl FROM users WHERE id = ? LIMIT 1",
         this::mapUser,
         userId
     );
@@ -245,7 +480,7 @@ public class ChatDataService {
     }
 
     Map<String, Object> chat = chats.get(0);
-    chat.put("members", membersForChat(chatId));
+    attachMembers(chat, chatId);
     var last = lastMessage(chatId);
     if (last != null) {
       chat.put("lastMessage", last);
@@ -256,11 +491,11 @@ public class ChatDataService {
   public Map<String, Object> messageById(String messageId) {
     var messages = jdbc.query(
         """
-            SELECT m.id, m.chatId, m.senderId, u.displayName AS senderName, m.kind, m.content, m.createdAt
+            SELECT %s, m.chatId, m.senderId, u.displayName AS senderName, m.kind, m.content, m.createdAt
             FROM messages m
             JOIN users u ON u.id = m.senderId
-            WHERE m.id = ?
-            """,
+            WHERE m.id = %s
+            """.formatted(messageIdColumn, messageIdParam),
         (rs, rowNum) -> mapMessage(rs),
         messageId
     );
@@ -276,7 +511,7 @@ public class ChatDataService {
     user.put("username", rs.getString("username"));
     user.put("displayName", rs.getString("displayName"));
     user.put("avatarUrl", rs.getString("avatarUrl"));
-    user.put("status", rs.getString("status"));
+    user.put("status", presence.statusOf(rs.getString("id")));
     return user;
   }
 
@@ -295,13 +530,13 @@ public class ChatDataService {
   private Map<String, Object> lastMessage(String chatId) {
     var list = jdbc.query(
         """
-            SELECT m.id, m.chatId, m.senderId, u.displayName AS senderName, m.kind, m.content, m.createdAt
+            SELECT %s, m.chatId, m.senderId, u.displayName AS senderName, m.kind, m.content, m.createdAt
             FROM messages m
             JOIN users u ON u.id = m.senderId
             WHERE m.chatId = ?
-            ORDER BY m.createdAt DESC
+            ORDER BY m.id DESC
             LIMIT 1
-            """,
+            """.formatted(messageIdColumn),
         (rs, rowNum) -> mapMessage(rs),
         chatId
     );
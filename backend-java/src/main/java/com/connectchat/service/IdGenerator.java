@@ -0,0 +1,38 @@
+package com.connectchat.service;
+
+import java.security.SecureRandom;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.stereotype.Component;
+
+@Component
+public class IdGenerator {
+  private static final long SEQUENCE_MASK = 0xFFFL;
+
+  private final SecureRandom random = new SecureRandom();
+  private final AtomicLong lastStamp = new AtomicLong();
+
+  public String next() {
+    return nextUuid().toString();
+  }
+
+  public UUID nextUuid() {
+    long stamp = nextStamp();
+    long timestamp = stamp >>> 12;
+    long sequence = stamp & SEQUENCE_MASK;
+    long msb = (timestamp << 16) | 0x7000L | sequence;
+    long lsb = (random.nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+    return new UUID(msb, lsb);
+  }
+
+  private long nextStamp() {
+    while (true) {
+      long last = lastStamp.get();
+      long candidate = System.currentTimeMillis() << 12;
+      long next = candidate > last ? candidate : last + 1;
+      if (lastStamp.compareAndSet(last, next)) {
+        return next;
+      }
+    }
+  }
+}
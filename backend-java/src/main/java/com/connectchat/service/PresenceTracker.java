@@ -0,0 +1,183 @@
+package com.connectchat.service;
+
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Component
+public class PresenceTracker {
+  private static final String OFFLINE = "offline";
+  private static final Set<String> STATUSES = Set.of("online", "busy", OFFLINE);
+
+  private final JdbcTemplate jdbc;
+  private final Map<String, Presence> live = new ConcurrentHashMap<>();
+  private final Map<String, String> pendingWrites = new ConcurrentHashMap<>();
+  private final long timeoutMs;
+  private final int batchSize;
+
+  public PresenceTracker(
+      JdbcTemplate jdbc,
+      @Value("${app.presence.timeout-ms:45000}") long timeoutMs,
+      @Value("${app.presence.batch-size:500}") int batchSize
+  ) {
+    this.jdbc = jdbc;
+    this.timeoutMs = timeoutMs;
+    this.batchSize = batchSize;
+  }
+
+  public String statusOf(String userId) {
+    var presence = live.get(userId);
+    return presence == null ? OFFLINE : presence.status;
+  }
+
+  public boolean connected(String userId, String sessionId) {
+    boolean[] changed = {false};
+    live.compute(userId, (id, presence) -> {
+      if (presence == null) {
+        changed[0] = true;
+        presence = new Presence("online");
+      }
+      presence.sessionIds.add(sessionId);
+      presence.lastSeen = System.currentTimeMillis();
+      return presence;
+    });
+    if (changed[0]) {
+      pendingWrites.put(userId, "online");
+    }
+    return changed[0];
+  }
+
+  public void heartbeat(String userId) {
+    var presence = live.get(userId);
+    if (presence != null) {
+      presence.lastSeen = System.currentTimeMillis();
+    }
+  }
+
+  public boolean update(String userId, String status) {
+    if (!STATUSES.contains(status)) {
+      throw new IllegalArgumentException("estado inválido");
+    }
+    boolean[] changed = {false};
+    live.computeIfPresent(userId, (id, presence) -> {
+      changed[0] = !status.equals(presence.status);
+      presence.status = status;
+      presence.lastSeen = System.currentTimeMillis();
+      return presence;
+    });
+    if (changed[0]) {
+      pendingWrites.put(userId, status);
+    }
+    return changed[0];
+  }
+
+  public boolean disconnected(String userId, String sessionId) {
+    Presence[] removed = {null};
+    // Un socket reemplazado puede cerrarse después de que el nuevo se conecte: solo el último pasa a offline.
+    live.computeIfPresent(userId, (id, presence) -> {
+      presence.sessionIds.remove(sessionId);
+      if (!presence.sessionIds.isEmpty()) {
+        return presence;
+      }
+      removed[0] = presence;
+      return null;
+    });
+    if (removed[0] == null) {
+      return false;
+    }
+    pendingWrites.put(userId, OFFLINE);
+    return !OFFLINE.equals(removed[0].status);
+  }
+
+  public List<String> expire() {
+    long cutoff = System.currentTimeMillis() - timeoutMs;
+    List<String> expired = new ArrayList<>();
+    for (String userId : live.keySet()) {
+      boolean[] stale = {false};
+      live.computeIfPresent(userId, (id, presence) -> {
+        stale[0] = presence.lastSeen < cutoff;
+        return stale[0] ? null : presence;
+      });
+      if (stale[0]) {
+        pendingWrites.put(userId, OFFLINE);
+        expired.add(userId);
+      }
+    }
+    return expired;
+  }
+
+  @Scheduled(fixedDelayString = "${app.presence.flush-ms:5000}")
+  public void flush() {
+    if (pendingWrites.isEmpty()) {
+      return;
+    }
+    Map<String, List<String>> byStatus = new HashMap<>();
+    for (String userId : List.copyOf(pendingWrites.keySet())) {
+      String status = pendingWrites.remove(userId);
+      if (status != null) {
+        byStatus.computeIfAbsent(status, key -> new ArrayList<>()).add(userId);
+      }
+    }
+    RuntimeException failure = null;
+    for (var entry : byStatus.entrySet()) {
+      try {
+        writeStatus(entry.getKey(), entry.getValue());
+      } catch (RuntimeException ex) {
+        failure = ex;
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void resetStaleStatuses() {
+    jdbc.update("UPDATE users SET status = 'offline' WHERE status <> 'offline'");
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    live.keySet().forEach(userId -> pendingWrites.put(userId, OFFLINE));
+    live.clear();
+    flush();
+  }
+
+  private void writeStatus(String status, List<String> userIds) {
+    for (int from = 0; from < userIds.size(); from += batchSize) {
+      var batch = userIds.subList(from, Math.min(from + batchSize, userIds.size()));
+      String placeholders = String.join(", ", Collections.nCopies(batch.size(), "?"));
+      List<Object> args = new ArrayList<>(batch.size() + 1);
+      args.add(status);
+      args.addAll(batch);
+      try {
+        jdbc.update("UPDATE users SET status = ? WHERE id IN (" + placeholders + ")", args.toArray());
+      } catch (RuntimeException ex) {
+        userIds.subList(from, userIds.size()).forEach(userId -> pendingWrites.putIfAbsent(userId, status));
+        throw ex;
+      }
+    }
+  }
+
+  private static final class Presence {
+    private final Set<String> sessionIds = new HashSet<>();
+    private volatile String status;
+    private volatile long lastSeen;
+
+    Presence(String status) {
+      this.status = status;
+    }
+  }
+}
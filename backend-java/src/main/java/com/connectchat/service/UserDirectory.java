@@ -0,0 +1,160 @@
+package com.connectchat.service;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.regex.Pattern;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+@Component
+public class UserDirectory {
+  private static final char SEPARATOR = '\u0000';
+  private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+  private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+  private final JdbcTemplate jdbc;
+  private final PresenceTracker presence;
+  private final int maxPageSize;
+  private final NavigableSet<String> index = new ConcurrentSkipListSet<>();
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+  private volatile boolean loaded;
+
+  public UserDirectory(
+      JdbcTemplate jdbc,
+      PresenceTracker presence,
+      @Value("${app.directory.max-page-size:50}") int maxPageSize
+  ) {
+    this.jdbc = jdbc;
+    this.presence = presence;
+    this.maxPageSize = maxPageSize;
+  }
+
+  public Map<String, Object> search(String query, String cursor, int limit) {
+    ensureLoaded();
+    String prefix = normalize(query);
+    int pageSize = Math.max(1, Math.min(limit, maxPageSize));
+    String from = cursor == null || cursor.isBlank() ? prefix : decodeCursor(cursor);
+    boolean inclusive = cursor == null || cursor.isBlank();
+
+    List<Map<String, Object>> users = new ArrayList<>(pageSize);
+    String lastKey = null;
+    for (String key : index.tailSet(from, inclusive)) {
+      if (!key.startsWith(prefix)) {
+        break;
+      }
+      if (users.size() == pageSize) {
+        break;
+      }
+      lastKey = key;
+      int split = key.indexOf(SEPARATOR);
+      var entry = entries.get(key.substring(split + 1));
+      if (entry != null && entry.firstTokenMatching(prefix).equals(key.substring(0, split))) {
+        users.add(entry.view(presence.statusOf(entry.id)));
+      }
+    }
+
+    boolean hasMore = lastKey != null && index.higher(lastKey) != null && index.higher(lastKey).startsWith(prefix);
+    Map<String, Object> page = new LinkedHashMap<>();
+    page.put("query", query == null ? "" : query);
+    page.put("users", users);
+    page.put("nextCursor", hasMore ? encodeCursor(lastKey) : null);
+    return page;
+  }
+
+  public void put(String id, String username, String displayName, String avatarUrl) {
+    var entry = new Entry(id, username, displayName, avatarUrl);
+    var previous = entries.put(id, entry);
+    if (previous != null) {
+      previous.tokens.forEach(token -> index.remove(token + SEPARATOR + id));
+    }
+    entry.tokens.forEach(token -> index.add(token + SEPARATOR + id));
+  }
+
+  private void ensureLoaded() {
+    if (loaded) {
+      return;
+    }
+    synchronized (this) {
+      if (loaded) {
+        return;
+      }
+      jdbc.query("SELECT id, username, displayName, avatarUrl FROM users", this::load);
+      loaded = true;
+    }
+  }
+
+  private void load(ResultSet rs) throws SQLException {
+    String id = rs.getString("id");
+    if (!entries.containsKey(id)) {
+      put(id, rs.getString("username"), rs.getString("displayName"), rs.getString("avatarUrl"));
+    }
+  }
+
+  static String normalize(String value) {
+    if (value == null) {
+      return "";
+    }
+    String stripped = MARKS.matcher(Normalizer.normalize(value.trim(), Normalizer.Form.NFD)).replaceAll("");
+    return WHITESPACE.matcher(stripped.toLowerCase(Locale.ROOT)).replaceAll(" ");
+  }
+
+  private static String encodeCursor(String key) {
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(key.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static String decodeCursor(String cursor) {
+    try {
+      return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+    } catch (IllegalArgumentException ex) {
+      throw new IllegalArgumentException("cursor inválido");
+    }
+  }
+
+  private static final class Entry {
+    private final String id;
+    private final String username;
+    private final String displayName;
+    private final String avatarUrl;
+    private final TreeSet<String> tokens = new TreeSet<>();
+
+    Entry(String id, String username, String displayName, String avatarUrl) {
+      this.id = id;
+      this.username = username;
+      this.displayName = displayName;
+      this.avatarUrl = avatarUrl;
+      tokens.add(normalize(username));
+      String name = normalize(displayName);
+      tokens.add(name);
+      tokens.addAll(List.of(name.split(" ")));
+      tokens.remove("");
+    }
+
+    String firstTokenMatching(String prefix) {
+      String first = tokens.ceiling(prefix);
+      return first != null && first.startsWith(prefix) ? first : "";
+    }
+
+    Map<String, Object> view(String status) {
+      Map<String, Object> user = new LinkedHashMap<>();
+      user.put("id", id);
+      user.put("username", username);
+      user.put("displayName", displayName);
+      user.put("avatarUrl", avatarUrl);
+      user.put("status", status);
+      return user;
+    }
+  }
+}
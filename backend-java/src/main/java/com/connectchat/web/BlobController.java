@@ -0,0 +1,93 @@
+package com.connectchat.web;
+
+import com.connectchat.service.AuthService;
+import com.connectchat.service.BlobStore;
+import com.connectchat.service.ChatDataService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+public class BlobController {
+  private static final List<String> INLINE_TYPES = List.of("image/", "audio/", "video/", "application/pdf");
+
+  private final BlobStore blobStore;
+  private final AuthService authService;
+  private final ChatDataService chatDataService;
+
+  public BlobController(BlobStore blobStore, AuthService authService, ChatDataService chatDataService) {
+    this.blobStore = blobStore;
+    this.authService = authService;
+    this.chatDataService = chatDataService;
+  }
+
+  @GetMapping("/blobs/{hash}")
+  public void download(
+      @PathVariable String hash,
+      @RequestParam(required = false) String token,
+      @RequestParam(required = false) String type,
+      HttpServletRequest request,
+      HttpServletResponse response
+  ) throws IOException {
+    String userId = RequestAuth.userId(authService, token, request.getHeader("Authorization"));
+    if (userId == null) {
+      response.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+      return;
+    }
+    if (!chatDataService.canReadBlob(userId, hash)) {
+      response.sendError(HttpServletResponse.SC_FORBIDDEN);
+      return;
+    }
+    var path = blobStore.resolve(hash);
+    if (path == null) {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+
+    String etag = "\"" + hash + "\"";
+    response.setHeader("ETag", etag);
+    response.setHeader("Cache-Control", "private, max-age=31536000, immutable");
+    response.setHeader("X-Content-Type-Options", "nosniff");
+    if (etag.equals(request.getHeader("If-None-Match"))) {
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return;
+    }
+
+    long size = Files.size(path);
+    response.setContentType(inlineType(type));
+    response.setContentLengthLong(size);
+
+    if (Boolean.TRUE.equals(request.getAttribute("org.apache.tomcat.sendfile.support"))) {
+      request.setAttribute("org.apache.tomcat.sendfile.filename", path.toString());
+      request.setAttribute("org.apache.tomcat.sendfile.start", 0L);
+      request.setAttribute("org.apache.tomcat.sendfile.end", size);
+      return;
+    }
+
+    try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ);
+         WritableByteChannel out = Channels.newChannel(response.getOutputStream())) {
+      long position = 0;
+      while (position < size) {
+        position += file.transferTo(position, size - position, out);
+      }
+    }
+  }
+
+  private String inlineType(String type) {
+    if (type != null && INLINE_TYPES.stream().anyMatch(type::startsWith) && !type.contains(";")
+        && !type.startsWith("image/svg")) {
+      return type;
+    }
+    return "application/octet-stream";
+  }
+}
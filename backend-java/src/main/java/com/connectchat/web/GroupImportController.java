@@ -0,0 +1,86 @@
+package com.connectchat.web;
+
+import com.connectchat.config.ReadYourWritesTracker;
+import com.connectchat.dto.GroupImportRequest;
+import com.connectchat.service.AuthService;
+import com.connectchat.service.ChatDataService;
+import com.connectchat.ws.ChatWebSocketHandler;
+import com.connectchat.ws.EventRateLimiter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+public class GroupImportController {
+  private static final String EVENT = "group:import";
+
+  private final AuthService authService;
+  private final ChatDataService chatDataService;
+  private final ChatWebSocketHandler chatHandler;
+  private final EventRateLimiter rateLimiter;
+  private final ReadYourWritesTracker readYourWrites;
+
+  public GroupImportController(
+      AuthService authService,
+      ChatDataService chatDataService,
+      ChatWebSocketHandler chatHandler,
+      EventRateLimiter rateLimiter,
+      ReadYourWritesTracker readYourWrites
+  ) {
+    this.authService = authService;
+    this.chatDataService = chatDataService;
+    this.chatHandler = chatHandler;
+    this.rateLimiter = rateLimiter;
+    this.readYourWrites = readYourWrites;
+  }
+
+  @PostMapping("/groups/{groupId}/members/import")
+  public ResponseEntity<Map<String, Object>> importMembers(
+      @PathVariable String groupId,
+      @RequestHeader(name = "Authorization", required = false) String authorization,
+      @RequestBody GroupImportRequest request
+  ) throws IOException {
+    String userId = RequestAuth.userId(authService, null, authorization);
+    if (userId == null) {
+      return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+    }
+    long retryAfterMs = rateLimiter.tryAcquire("user:" + userId, EVENT);
+    if (retryAfterMs > 0) {
+      return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+          .header("Retry-After", String.valueOf((retryAfterMs + 999) / 1000))
+          .body(Map.of("message", "Demasiadas solicitudes, intenta de nuevo en unos segundos", "retryAfterMs", retryAfterMs));
+    }
+
+    readYourWrites.bind(userId);
+    try {
+      var result = chatDataService.importGroupMembers(groupId, userId, userIds(request));
+      chatHandler.announceGroupImport(groupId, result);
+      return ResponseEntity.ok(result);
+    } catch (IllegalArgumentException ex) {
+      return ResponseEntity.badRequest().body(Map.of("message", ex.getMessage()));
+    } finally {
+      readYourWrites.clear();
+    }
+  }
+
+  private List<String> userIds(GroupImportRequest request) {
+    List<String> values = new ArrayList<>();
+    if (request == null || request.userIds() == null) {
+      return values;
+    }
+    for (String value : request.userIds()) {
+      if (value != null && !value.isBlank()) {
+        values.add(value);
+      }
+    }
+    return values;
+  }
+}
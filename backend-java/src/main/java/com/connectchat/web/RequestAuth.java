@@ -0,0 +1,23 @@
+package com.connectchat.web;
+
+import com.connectchat.service.AuthService;
+
+final class RequestAuth {
+  private RequestAuth() {
+  }
+
+  static String userId(AuthService authService, String token, String authorization) {
+    String credential = token;
+    if ((credential == null || credential.isBlank()) && authorization != null && authorization.startsWith("Bearer ")) {
+      credential = authorization.substring(7);
+    }
+    if (credential == null || credential.isBlank()) {
+      return null;
+    }
+    try {
+      return authService.userIdFromToken(credential);
+    } catch (RuntimeException ex) {
+      return null;
+    }
+  }
+}
@@ -1,92 +1,221 @@
 package com.connectchat.ws;
 
+import com.connectchat.config.ReadYourWritesTracker;
 import com.connectchat.dto.AuthLoginRequest;
 import com.connectchat.dto.AuthRegisterRequest;
 import com.connectchat.dto.AuthResponse;
-import com.connectchat.dto.RtcSignal;
 import com.connectchat.dto.WsFrame;
 import com.connectchat.service.AuthService;
+import com.connectchat.service.BlobStore;
 import com.connectchat.service.ChatDataService;
+import com.connectchat.service.PresenceTracker;
+import com.connectchat.service.UserDirectory;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
 import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PingMessage;
+import org.springframework.web.socket.PongMessage;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
 
 @Component
 public class ChatWebSocketHandler extends TextWebSocketHandler {
+  private static final int MAX_PENDING_UPLOADS = 4;
+  private static final Set<String> AUTH_EVENTS = Set.of("auth:login", "auth:register");
+
   private final ObjectMapper objectMapper;
   private final AuthService authService;
   private final WsSessionRegistry registry;
   private final ChatDataService chatDataService;
+  private final UserDirectory userDirectory;
+  private final TypingThrottle typingThrottle;
+  private final EventRateLimiter rateLimiter;
+  private final ReadYourWritesTracker readYourWrites;
+  private final UserEventLog eventLog;
+  private final BlobStore blobStore;
+  private final PresenceTracker presence;
+  private final int blobChunkSize;
 
   public ChatWebSocketHandler(
       ObjectMapper objectMapper,
       AuthService authService,
       WsSessionRegistry registry,
-      ChatDataService chatDataService
+      ChatDataService chatDataService,
+      UserDirectory userDirectory,
+      TypingThrottle typingThrottle,
+      EventRateLimiter rateLimiter,
+      ReadYourWritesTracker readYourWrites,
+      UserEventLog eventLog,
+      BlobStore blobStore,
+      PresenceTracker presence,
+      @Value("${app.blobs.chunk-size:65536}") int blobChunkSize
   ) {
     this.objectMapper = objectMapper;
     this.authService = authService;
     this.registry = registry;
     this.chatDataService = chatDataService;
+    this.userDirectory = userDirectory;
+    this.typingThrottle = typingThrottle;
+    this.rateLimiter = rateLimiter;
+    this.readYourWrites = readYourWrites;
+    this.eventLog = eventLog;
+    this.blobStore = blobStore;
+    this.presence = presence;
+    this.blobChunkSize = blobChunkSize;
   }
 
   @Override
   protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
-    JsonNode root = objectMapper.readTree(message.getPayload());
-    String event = root.path("event").asText();
-    JsonNode data = root.path("data");
+    RawFrame frame = RawFrame.parse(objectMapper.getFactory(), message.getPayload());
+    String event = frame.event();
+
+    if (rateLimited(session, event)) {
+      return;
+    }
 
+    String userId = (String) session.getAttributes().get("userId");
+    if (userId != null) {
+      presence.heartbeat(userId);
+    }
+    readYourWrites.bind(userId);
     try {
+      if ("rtc:signal".equals(event)) {
+        relayRtcSignal(session, frame);
+        return;
+      }
+      JsonNode data = frame.data(objectMapper);
       switch (event) {
         case "auth:register" -> handleRegister(session, data);
         case "auth:login" -> handleLogin(session, data);
         case "auth:me" -> handleAuthMe(session);
         case "chat:list" -> handleChatList(session);
         case "user:list" -> handleUserList(session);
+        case "user:search" -> handleUserSearch(session, data);
         case "message:list" -> handleMessageList(session, data);
         case "chat:createDirect" -> handleCreateDirect(session, data);
         case "group:create" -> handleCreateGroup(session, data);
         case "group:invite" -> handleInviteGroup(session, data);
+        case "group:import" -> handleImportGroup(session, data);
         case "message:send" -> handleSendMessage(session, data);
         case "presence:update" -> handlePresenceUpdate(session, data);
-        case "rtc:signal" -> relayRtcSignal(data);
-        default -> session.sendMessage(new TextMessage(objectMapper.writeValueAsString(
-            new WsFrame(event, objectMapper.convertValue(data, Map.class))
-        )));
+        case "presence:heartbeat" -> sendEvent(session, "presence:heartbeat", Map.of("userId", requireUserId(session)));
+        case "typing:update" -> handleTypingUpdate(session, data);
+        case "blob:begin" -> handleBlobBegin(session, data);
+        default -> sendEvent(session, event, objectMapper.convertValue(data, Map.class));
       }
     } catch (IllegalArgumentException ex) {
       sendEvent(session, "error", Map.of("message", ex.getMessage(), "event", event));
+    } finally {
+      readYourWrites.clear();
+    }
+  }
+
+  @Override
+  protected void handlePongMessage(WebSocketSession session, PongMessage message) {
+    String userId = (String) session.getAttributes().get("userId");
+    if (userId != null) {
+      presence.heartbeat(userId);
     }
   }
 
+  @Override
+  protected void handleBinaryMessage(WebSocketSession session, BinaryMessage message) {
+    try {
+      handleBlobChunk(session, message);
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+  }
+
+  private void handleBlobChunk(WebSocketSession session, BinaryMessage message) throws IOException {
+    if (rateLimited(session, "blob:chunk")) {
+      return;
+    }
+
+    try {
+      requireUserId(session);
+      ByteBuffer buffer = message.getPayload();
+      if (buffer.remaining() < Integer.BYTES) {
+        throw new IllegalArgumentException("fragmento de archivo inválido");
+      }
+      int uploadId = buffer.getInt();
+      var pending = uploads(session).get(uploadId);
+      if (pending == null) {
+        throw new IllegalArgumentException("subida no encontrada");
+      }
+      String hash;
+      try {
+        if (!pending.upload().append(buffer.slice())) {
+          return;
+        }
+        uploads(session).remove(uploadId);
+        hash = pending.upload().commit();
+      } catch (IOException | IllegalArgumentException ex) {
+        uploads(session).remove(uploadId);
+        pending.upload().abort();
+        if (ex instanceof IllegalArgumentException invalid) {
+          throw invalid;
+        }
+        throw new IllegalArgumentException("no se pudo guardar el archivo");
+      }
+      uploadedHashes(session).add(hash);
+      Map<String, Object> blob = new LinkedHashMap<>();
+      blob.put("uploadId", uploadId);
+      blob.put("hash", hash);
+      blob.put("size", pending.upload().expected());
+      blob.put("mime", pending.mime());
+      blob.put("name", pending.name());
+      blob.put("url", "/blobs/" + hash);
+      sendEvent(session, "blob:complete", blob);
+    } catch (IllegalArgumentException ex) {
+      sendEvent(session, "error", Map.of("message", ex.getMessage(), "event", "blob:chunk"));
+    }
+  }
+
+  private void handleBlobBegin(WebSocketSession session, JsonNode data) throws IOException {
+    String userId = requireUserId(session);
+    long size = data.path("size").asLong(0);
+    String mime = data.path("mime").asText("application/octet-stream");
+    String name = data.path("name").asText("archivo");
+    if (uploads(session).size() >= MAX_PENDING_UPLOADS) {
+      throw new IllegalArgumentException("demasiadas subidas simultáneas");
+    }
+    var upload = blobStore.begin(userId, size);
+    int uploadId = nextUploadId(session);
+    uploads(session).put(uploadId, new PendingUpload(upload, mime, name));
+    sendEvent(session, "blob:begin", Map.of("uploadId", uploadId, "chunkSize", blobChunkSize));
+  }
+
   private void handleRegister(WebSocketSession session, JsonNode data) throws IOException {
     var req = objectMapper.convertValue(data, AuthRegisterRequest.class);
     var user = authService.register(req.username(), req.displayName(), req.email(), req.password());
     var token = authService.tokenFor(user);
-    session.getAttributes().put("userId", user.id());
-    registry.bind(user.id(), session);
-    session.sendMessage(new TextMessage(objectMapper.writeValueAsString(
-        new WsFrame("auth:register", new AuthResponse(token, user))
-    )));
+    sendEvent(session, "auth:register", new AuthResponse(token, user));
+    bindSession(session, user.id());
   }
 
   private void handleLogin(WebSocketSession session, JsonNode data) throws IOException {
     var req = objectMapper.convertValue(data, AuthLoginRequest.class);
     var user = authService.login(req.usernameOrEmail(), req.password());
     var token = authService.tokenFor(user);
-    session.getAttributes().put("userId", user.id());
-    registry.bind(user.id(), session);
-    session.sendMessage(new TextMessage(objectMapper.writeValueAsString(
-        new WsFrame("auth:login", new AuthResponse(token, user))
-    )));
+    sendEvent(session, "auth:login", new AuthResponse(token, user));
+    bindSession(session, user.id());
   }
 
   private void handleChatList(WebSocketSession session) throws IOException {
@@ -104,11 +233,20 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
     sendEvent(session, "user:list", chatDataService.listUsers());
   }
 
+  private void handleUserSearch(WebSocketSession session, JsonNode data) throws IOException {
+    requireUserId(session);
+    String query = data.path("query").asText("");
+    String cursor = data.path("cursor").asText(null);
+    int limit = data.path("limit").asInt(20);
+    sendEvent(session, "user:search", userDirectory.search(query, cursor, limit));
+  }
+
   private void handleMessageList(WebSocketSession session, JsonNode data) throws IOException {
     requireUserId(session);
     String chatId = data.path("chatId").asText();
     int limit = data.path("limit").asInt(100);
-    sendEvent(session, "message:list", chatDataService.listMessages(chatId, limit));
+    String before = data.path("before").asText(null);
+    sendEvent(session, "message:list", chatDataService.listMessages(chatId, limit, before));
   }
 
   private void handleCreateDirect(WebSocketSession session, JsonNode data) throws IOException {
@@ -132,7 +270,27 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
     String groupId = data.path("groupId").asText();
     List<String> userIds = toStringList(data.path("userIds"));
     var chat = chatDataService.inviteToGroup(groupId, userIds);
-    sendEvent(session, "chat:updated", chat);
+    fanOut(chatDataService.memberIdsForChat(groupId), "chat:updated", chat, false);
+  }
+
+  private void handleImportGroup(WebSocketSession session, JsonNode data) throws IOException {
+    String userId = requireUserId(session);
+    String groupId = data.path("groupId").asText();
+    List<String> userIds = toStringList(data.path("userIds"));
+    var result = chatDataService.importGroupMembers(groupId, userId, userIds);
+    sendEvent(session, "group:import", result);
+    announceGroupImport(groupId, result);
+  }
+
+  public void announceGroupImport(String groupId, Map<String, Object> result) throws IOException {
+    if ((int) result.get("addedCount") == 0) {
+      return;
+    }
+    var chat = chatDataService.chatById(groupId);
+    if (result.containsKey("addedMemberIds")) {
+      chat.put("addedMemberIds", result.get("addedMemberIds"));
+    }
+    fanOut(chatDataService.memberIdsForChat(groupId), "chat:updated", chat, false);
   }
 
   private void handleSendMessage(WebSocketSession session, JsonNode data) throws IOException {
@@ -140,43 +298,93 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
     String chatId = data.path("chatId").asText();
     String kind = data.path("kind").asText("text");
     String content = data.path("content").asText("");
-    var msg = chatDataService.createMessage(chatId, userId, kind, content);
-
-    for (var member : chatDataService.membersForChat(chatId)) {
-      var toUserId = (String) member.get("id");
-      registry.byUserId(toUserId).ifPresent(ws -> {
-        try {
-          sendEvent(ws, "message:receive", msg);
-        } catch (IOException ignored) {
-        }
-      });
+    JsonNode attachment = data.path("attachment");
+    String hash = null;
+    if ("object".equals(kind) && attachment.hasNonNull("hash")) {
+      hash = attachment.path("hash").asText();
+      if (!uploadedHashes(session).contains(hash) && !chatDataService.canReadBlob(userId, hash)) {
+        throw new IllegalArgumentException("adjunto no encontrado");
+      }
+      Map<String, Object> ref = new LinkedHashMap<>();
+      ref.put("blob", hash);
+      ref.put("size", blobStore.retain(hash));
+      ref.put("mime", attachment.path("mime").asText("application/octet-stream"));
+      ref.put("name", attachment.path("name").asText("archivo"));
+      content = objectMapper.writeValueAsString(ref);
     }
+    var msg = chatDataService.createMessage(chatId, userId, kind, content, hash);
+    fanOut(chatDataService.memberIdsForChat(chatId), "message:receive", msg, false);
   }
 
   private void handlePresenceUpdate(WebSocketSession session, JsonNode data) throws IOException {
     String userId = requireUserId(session);
     String status = data.path("status").asText("online");
-    chatDataService.updateUserStatus(userId, status);
-    var payload = Map.of("userId", userId, "status", status);
-    for (var member : chatDataService.listUsers()) {
-      var targetUserId = (String) member.get("id");
-      registry.byUserId(targetUserId).ifPresent(ws -> {
+    if (presence.update(userId, status)) {
+      broadcastPresence(userId, status);
+    }
+  }
+
+  private void broadcastPresence(String userId, String status) throws IOException {
+    fanOut(eventLog.activeUserIds(), "presence:update", Map.of("userId", userId, "status", status), false);
+  }
+
+  @Scheduled(fixedDelayString = "${app.presence.heartbeat-ms:15000}")
+  public void checkPresence() throws IOException {
+    for (String userId : presence.expire()) {
+      var expired = registry.byUserId(userId);
+      if (expired.isPresent()) {
         try {
-          sendEvent(ws, "presence:update", payload);
+          expired.get().close(CloseStatus.SESSION_NOT_RELIABLE);
         } catch (IOException ignored) {
         }
-      });
+      }
+      broadcastPresence(userId, "offline");
+    }
+    var ping = new PingMessage();
+    for (WebSocketSession ws : registry.sessions()) {
+      if (!registry.underPressure(ws)) {
+        WsSessionRegistry.trySend(ws, ping);
+      }
     }
+  }
+
+  private void handleTypingUpdate(WebSocketSession session, JsonNode data) throws IOException {
+    String userId = requireUserId(session);
+    String chatId = data.path("chatId").asText();
+    boolean typing = data.path("typing").asBoolean(true);
+    var memberIds = chatDataService.memberIdsForChat(chatId);
+    if (!memberIds.contains(userId) || !typingThrottle.shouldBroadcast(userId, chatId, typing)) {
+      return;
+    }
+    var payload = Map.of(
+        "chatId", chatId,
+        "userId", userId,
+        "typing", typing,
+        "expiresInMs", typingThrottle.ttlMs()
+    );
+    var recipients = memberIds.stream().filter(memberId -> !memberId.equals(userId)).toList();
+    fanOut(recipients, "typing:update", payload, true);
   }
 
-  private void relayRtcSignal(JsonNode data) throws IOException {
-    var signal = objectMapper.convertValue(data, RtcSignal.class);
-    registry.byUserId(signal.toUserId()).ifPresent(session -> {
-      try {
-        session.sendMessage(new TextMessage(objectMapper.writeValueAsString(new WsFrame("rtc:signal", signal))));
-      } catch (IOException ignored) {
-      }
-    });
+  private void relayRtcSignal(WebSocketSession session, RawFrame frame) throws IOException {
+    String userId = requireUserId(session);
+    var route = frame.dataFields(objectMapper.getFactory(), Set.of("chatId", "toUserId"));
+    String chatId = route.get("chatId");
+    String toUserId = route.get("toUserId");
+    if (chatId == null || toUserId == null) {
+      throw new IllegalArgumentException("señal RTC inválida");
+    }
+    var memberIds = chatDataService.memberIdsForChat(chatId);
+    if (!memberIds.contains(userId) || !memberIds.contains(toUserId)) {
+      throw new IllegalArgumentException("No autorizado para señalizar en este chat");
+    }
+    var target = registry.byUserId(toUserId);
+    if (target.isEmpty()) {
+      return;
+    }
+    String data = frame.rawDataWith(objectMapper.getFactory(), "fromUserId", objectMapper.writeValueAsString(userId));
+    String relayed = "{\"event\":\"rtc:signal\",\"data\":" + data + "}";
+    WsSessionRegistry.trySend(target.get(), new TextMessage(relayed));
   }
 
   @Override
@@ -185,8 +393,7 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
     if (token != null) {
       try {
         var userId = authService.userIdFromToken(token);
-        session.getAttributes().put("userId", userId);
-        registry.bind(userId, session);
+        bindSession(session, userId);
       } catch (RuntimeException ignored) {
         session.getAttributes().remove("token");
       }
@@ -198,11 +405,54 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
   public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
     var userId = (String) session.getAttributes().get("userId");
     if (userId != null) {
-      registry.remove(userId);
+      release(session, userId);
     }
+    uploads(session).values().forEach(pending -> pending.upload().abort());
     super.afterConnectionClosed(session, status);
   }
 
+  private void bindSession(WebSocketSession session, String userId) throws IOException {
+    var previous = (String) session.getAttributes().put("userId", userId);
+    if (previous != null && !previous.equals(userId)) {
+      release(session, previous);
+    }
+    var stream = eventLog.open(userId);
+    synchronized (stream) {
+      registry.bind(userId, session);
+      var resumed = stream.resume((String) session.getAttributes().remove("resume"), registry.outbound(session));
+      sendEvent(session, "session:resume", resumed);
+    }
+    if (presence.connected(userId, session.getId())) {
+      broadcastPresence(userId, "online");
+    }
+  }
+
+  private void release(WebSocketSession session, String userId) throws IOException {
+    eventLog.closed(userId, () -> registry.remove(userId, session));
+    if (presence.disconnected(userId, session.getId())) {
+      broadcastPresence(userId, "offline");
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private Map<Integer, PendingUpload> uploads(WebSocketSession session) {
+    return (Map<Integer, PendingUpload>) session.getAttributes()
+        .computeIfAbsent("uploads", key -> new ConcurrentHashMap<Integer, PendingUpload>());
+  }
+
+  @SuppressWarnings("unchecked")
+  private Set<String> uploadedHashes(WebSocketSession session) {
+    return (Set<String>) session.getAttributes()
+        .computeIfAbsent("uploadedHashes", key -> ConcurrentHashMap.newKeySet());
+  }
+
+  private int nextUploadId(WebSocketSession session) {
+    return ((AtomicInteger) session.getAttributes()
+        .computeIfAbsent("uploadSeq", key -> new AtomicInteger())).incrementAndGet();
+  }
+
+  private record PendingUpload(BlobStore.Upload upload, String mime, String name) {}
+
   private String requireUserId(WebSocketSession session) {
     String userId = (String) session.getAttributes().get("userId");
     if (userId == null || userId.isBlank()) {
@@ -212,6 +462,29 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
   }
 
 
+  private boolean rateLimited(WebSocketSession session, String event) throws IOException {
+    long retryAfterMs = rateLimiter.tryAcquire(rateLimitKey(session, event), event);
+    if (retryAfterMs == 0) {
+      return false;
+    }
+    sendEvent(session, "error", Map.of(
+        "message", "Demasiadas solicitudes, intenta de nuevo en unos segundos",
+        "event", event,
+        "code", "rate_limited",
+        "retryAfterMs", retryAfterMs
+    ));
+    return true;
+  }
+
+  private String rateLimitKey(WebSocketSession session, String event) {
+    var remote = session.getRemoteAddress();
+    if (AUTH_EVENTS.contains(event) && remote != null) {
+      return "addr:" + remote.getHostString();
+    }
+    String userId = (String) session.getAttributes().get("userId");
+    return userId != null ? "user:" + userId : "session:" + session.getId();
+  }
+
   private List<String> toStringList(JsonNode node) {
     List<String> values = new ArrayList<>();
     if (node == null || !node.isArray()) {
@@ -225,7 +498,30 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
     }
     return values;
   }
+
+  private void fanOut(Collection<String> userIds, String event, Object data, boolean droppable) throws IOException {
+    if (!droppable) {
+      String framePrefix = "{\"event\":" + objectMapper.writeValueAsString(event)
+          + ",\"data\":" + objectMapper.writeValueAsString(data) + ",\"seq\":";
+      for (String userId : userIds) {
+        var stream = eventLog.find(userId);
+        if (stream != null) {
+          stream.deliver(framePrefix, () -> registry.byUserId(userId).orElse(null));
+        }
+      }
+      return;
+    }
+    var message = new TextMessage(objectMapper.writeValueAsString(new WsFrame(event, data)));
+    for (String userId : userIds) {
+      registry.byUserId(userId).ifPresent(ws -> {
+        if (!registry.underPressure(ws)) {
+          WsSessionRegistry.trySend(ws, message);
+        }
+      });
+    }
+  }
+
   private void sendEvent(WebSocketSession session, String event, Object data) throws IOException {
-    session.sendMessage(new TextMessage(objectMapper.writeValueAsString(new WsFrame(event, data))));
+    registry.outbound(session).sendMessage(new TextMessage(objectMapper.writeValueAsString(new WsFrame(event, data))));
   }
 }
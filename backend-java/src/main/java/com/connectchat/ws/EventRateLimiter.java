@@ -0,0 +1,72 @@
+package com.connectchat.ws;
+
+import com.connectchat.config.RateLimitProperties;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.stereotype.Component;
+
+@Component
+public class EventRateLimiter {
+  private static final long SWEEP_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+  private static final String OTHER_EVENTS = "*";
+
+  private final RateLimitProperties properties;
+  private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+  private final AtomicLong lastSweep = new AtomicLong(System.nanoTime());
+
+  public EventRateLimiter(RateLimitProperties properties) {
+    this.properties = properties;
+  }
+
+  public long tryAcquire(String principal, String event) {
+    if (!properties.enabled()) {
+      return 0;
+    }
+    long now = System.nanoTime();
+    sweep(now);
+    String bucketEvent = properties.events().containsKey(event) ? event : OTHER_EVENTS;
+    var bucket = buckets.computeIfAbsent(principal + "|" + bucketEvent, key -> new TokenBucket(properties.budgetFor(event)));
+    long waitNanos = bucket.tryAcquire(now);
+    return waitNanos == 0 ? 0 : Math.max(1, TimeUnit.NANOSECONDS.toMillis(waitNanos));
+  }
+
+  private void sweep(long now) {
+    long last = lastSweep.get();
+    if (now - last < SWEEP_INTERVAL_NANOS || !lastSweep.compareAndSet(last, now)) {
+      return;
+    }
+    buckets.values().removeIf(bucket -> bucket.isFull(now));
+  }
+
+  static final class TokenBucket {
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final AtomicLong theoreticalArrival;
+
+    TokenBucket(RateLimitProperties.Budget budget) {
+      this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / Math.max(budget.refillPerSecond(), 0.001));
+      this.burstNanos = intervalNanos * Math.max(budget.capacity() - 1, 0);
+      this.theoreticalArrival = new AtomicLong(System.nanoTime() - intervalNanos);
+    }
+
+    long tryAcquire(long now) {
+      while (true) {
+        long tat = theoreticalArrival.get();
+        long start = tat - now > 0 ? tat : now;
+        long wait = start - now - burstNanos;
+        if (wait > 0) {
+          return wait;
+        }
+        if (theoreticalArrival.compareAndSet(tat, start + intervalNanos)) {
+          return 0;
+        }
+      }
+    }
+
+    boolean isFull(long now) {
+      return theoreticalArrival.get() - now <= 0;
+    }
+  }
+}
@@ -0,0 +1,101 @@
+package com.connectchat.ws;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.MissingNode;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+record RawFrame(String event, String payload, int dataStart, int dataEnd) {
+
+  static RawFrame parse(JsonFactory factory, String payload) throws IOException {
+    String event = "";
+    int dataStart = -1;
+    int dataEnd = -1;
+    try (JsonParser parser = factory.createParser(payload)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new IllegalArgumentException("frame inválido");
+      }
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.currentName();
+        JsonToken value = parser.nextToken();
+        if ("event".equals(field) && value == JsonToken.VALUE_STRING) {
+          event = parser.getText();
+        } else if ("data".equals(field) && (value == JsonToken.START_OBJECT || value == JsonToken.START_ARRAY)) {
+          dataStart = (int) parser.currentTokenLocation().getCharOffset();
+          parser.skipChildren();
+          dataEnd = (int) parser.currentLocation().getCharOffset();
+        } else {
+          parser.skipChildren();
+        }
+      }
+    }
+    return new RawFrame(event, payload, dataStart, dataEnd);
+  }
+
+  boolean hasData() {
+    return dataStart >= 0;
+  }
+
+  String rawData() {
+    return hasData() ? payload.substring(dataStart, dataEnd) : "{}";
+  }
+
+  JsonNode data(ObjectMapper objectMapper) throws IOException {
+    return hasData() ? objectMapper.readTree(rawData()) : MissingNode.getInstance();
+  }
+
+  String rawDataWith(JsonFactory factory, String field, String jsonValue) throws IOException {
+    String data = rawData();
+    List<String> members = new ArrayList<>();
+    try (JsonParser parser = factory.createParser(data)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new IllegalArgumentException("frame inválido");
+      }
+      JsonToken token = parser.nextToken();
+      while (token == JsonToken.FIELD_NAME) {
+        int start = (int) parser.currentTokenLocation().getCharOffset();
+        String name = parser.currentName();
+        parser.nextToken();
+        parser.skipChildren();
+        token = parser.nextToken();
+        int end = (int) parser.currentTokenLocation().getCharOffset();
+        if (!field.equals(name)) {
+          String member = data.substring(start, end).strip();
+          members.add(member.endsWith(",") ? member.substring(0, member.length() - 1).strip() : member);
+        }
+      }
+    }
+    members.add("\"" + field + "\":" + jsonValue);
+    return "{" + String.join(",", members) + "}";
+  }
+
+  Map<String, String> dataFields(JsonFactory factory, Set<String> names) throws IOException {
+    Map<String, String> fields = new HashMap<>();
+    if (!hasData()) {
+      return fields;
+    }
+    try (JsonParser parser = factory.createParser(payload.substring(dataStart, dataEnd))) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        return fields;
+      }
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.currentName();
+        JsonToken value = parser.nextToken();
+        if (names.contains(field) && value == JsonToken.VALUE_STRING) {
+          fields.put(field, parser.getText());
+        } else {
+          parser.skipChildren();
+        }
+      }
+    }
+    return fields;
+  }
+}
@@ -0,0 +1,54 @@
+package com.connectchat.ws;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+@Component
+public class TypingThrottle {
+  private final Map<String, Long> typingSince = new ConcurrentHashMap<>();
+  private final AtomicLong lastSweep = new AtomicLong();
+  private final long throttleMs;
+  private final long ttlMs;
+
+  public TypingThrottle(
+      @Value("${app.typing.throttle-ms:2000}") long throttleMs,
+      @Value("${app.typing.ttl-ms:6000}") long ttlMs
+  ) {
+    this.throttleMs = throttleMs;
+    this.ttlMs = ttlMs;
+  }
+
+  public long ttlMs() {
+    return ttlMs;
+  }
+
+  public boolean shouldBroadcast(String userId, String chatId, boolean typing) {
+    long now = System.currentTimeMillis();
+    sweep(now);
+    String key = userId + ":" + chatId;
+    if (!typing) {
+      Long since = typingSince.remove(key);
+      return since != null && now - since < ttlMs;
+    }
+    boolean[] accepted = {false};
+    typingSince.compute(key, (k, last) -> {
+      if (last == null || now - last >= throttleMs) {
+        accepted[0] = true;
+        return now;
+      }
+      return last;
+    });
+    return accepted[0];
+  }
+
+  private void sweep(long now) {
+    long last = lastSweep.get();
+    if (now - last < ttlMs || !lastSweep.compareAndSet(last, now)) {
+      return;
+    }
+    typingSince.values().removeIf(since -> now - since >= ttlMs);
+  }
+}
@@ -0,0 +1,147 @@
+package com.connectchat.ws;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+@Component
+public class UserEventLog {
+  private final Map<String, Stream> streams = new ConcurrentHashMap<>();
+  private final AtomicLong lastSweep = new AtomicLong();
+  private final int capacity;
+  private final long graceMs;
+
+  public UserEventLog(
+      @Value("${app.events.replay-capacity:256}") int capacity,
+      @Value("${app.events.grace-ms:120000}") long graceMs
+  ) {
+    this.capacity = capacity;
+    this.graceMs = graceMs;
+  }
+
+  public Stream open(String userId) {
+    long now = System.currentTimeMillis();
+    sweep(now);
+    return streams.compute(userId, (id, stream) -> {
+      if (stream == null || stream.expired(now, graceMs)) {
+        stream = new Stream();
+      }
+      stream.disconnectedAt = 0;
+      return stream;
+    });
+  }
+
+  public boolean closed(String userId, BooleanSupplier detach) {
+    var stream = streams.get(userId);
+    if (stream == null) {
+      return detach.getAsBoolean();
+    }
+    // bindSession enlaza el socket nuevo bajo este mismo monitor: si ya lo hizo, detach no quita nada.
+    synchronized (stream) {
+      if (!detach.getAsBoolean()) {
+        return false;
+      }
+      stream.disconnectedAt = System.currentTimeMillis();
+      return true;
+    }
+  }
+
+  public Stream find(String userId) {
+    return streams.get(userId);
+  }
+
+  public Set<String> activeUserIds() {
+    return streams.keySet();
+  }
+
+  private void sweep(long now) {
+    long last = lastSweep.get();
+    if (now - last < graceMs || !lastSweep.compareAndSet(last, now)) {
+      return;
+    }
+    streams.values().removeIf(stream -> stream.expired(now, graceMs));
+  }
+
+  public final class Stream {
+    private final String epoch = UUID.randomUUID().toString().substring(0, 8);
+    private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+    private long seq;
+    private volatile long disconnectedAt;
+
+    public synchronized void deliver(String framePrefix, Supplier<WebSocketSession> target) {
+      long now = System.currentTimeMillis();
+      String frame = framePrefix + (++seq) + "}";
+      entries.addLast(new Entry(seq, now, frame));
+      while (entries.size() > capacity || now - entries.peekFirst().createdAt() > graceMs) {
+        entries.removeFirst();
+      }
+      var session = target.get();
+      if (session != null) {
+        WsSessionRegistry.trySend(session, new TextMessage(frame));
+      }
+    }
+
+    public synchronized Map<String, Object> resume(String token, WebSocketSession session) throws IOException {
+      disconnectedAt = 0;
+      List<String> missed = missedSince(token);
+      if (missed != null) {
+        for (String frame : missed) {
+          session.sendMessage(new TextMessage(frame));
+        }
+      }
+      Map<String, Object> status = new LinkedHashMap<>();
+      status.put("status", token == null ? "fresh" : missed == null ? "reset" : "resumed");
+      status.put("epoch", epoch);
+      status.put("seq", seq);
+      status.put("replayed", missed == null ? 0 : missed.size());
+      return status;
+    }
+
+    private List<String> missedSince(String token) {
+      if (token == null) {
+        return List.of();
+      }
+      int dot = token.lastIndexOf('.');
+      if (dot < 0 || !epoch.equals(token.substring(0, dot))) {
+        return null;
+      }
+      long lastSeq;
+      try {
+        lastSeq = Long.parseLong(token.substring(dot + 1));
+      } catch (NumberFormatException ex) {
+        return null;
+      }
+      long oldest = entries.isEmpty() ? seq + 1 : entries.peekFirst().seq();
+      if (lastSeq > seq || lastSeq < oldest - 1) {
+        return null;
+      }
+      List<String> missed = new ArrayList<>();
+      for (Entry entry : entries) {
+        if (entry.seq() > lastSeq) {
+          missed.add(entry.frame());
+        }
+      }
+      return missed;
+    }
+
+    private boolean expired(long now, long graceMs) {
+      long since = disconnectedAt;
+      return since != 0 && now - since > graceMs;
+    }
+  }
+
+  private record Entry(long seq, long createdAt, String frame) {}
+}
@@ -1,24 +1,79 @@
 package com.connectchat.ws;
 
+import java.io.IOException;
+import java.util.Collection;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketMessage;
 import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
 
 @Component
 public class WsSessionRegistry {
+  private static final String OUTBOUND_ATTRIBUTE = "outbound";
+
   private final Map<String, WebSocketSession> userSessions = new ConcurrentHashMap<>();
+  private final int sendTimeLimitMs;
+  private final int bufferSizeLimit;
+  private final int pressureThreshold;
+
+  public WsSessionRegistry(
+      @Value("${app.ws.send-time-limit-ms:10000}") int sendTimeLimitMs,
+      @Value("${app.ws.buffer-size-limit:524288}") int bufferSizeLimit,
+      @Value("${app.ws.pressure-threshold:65536}") int pressureThreshold
+  ) {
+    this.sendTimeLimitMs = sendTimeLimitMs;
+    this.bufferSizeLimit = bufferSizeLimit;
+    this.pressureThreshold = pressureThreshold;
+  }
 
   public void bind(String userId, WebSocketSession session) {
-    userSessions.put(userId, session);
+    userSessions.put(userId, outbound(session));
   }
 
-  public void remove(String userId) {
-    userSessions.remove(userId);
+  public boolean remove(String userId, WebSocketSession session) {
+    return userSessions.remove(userId, outbound(session));
   }
 
   public Optional<WebSocketSession> byUserId(String userId) {
     return Optional.ofNullable(userSessions.get(userId));
   }
-}
\ No newline at end of file
+
+  public Collection<WebSocketSession> sessions() {
+    return userSessions.values();
+  }
+
+  public WebSocketSession outbound(WebSocketSession session) {
+    if (session instanceof ConcurrentWebSocketSessionDecorator) {
+      return session;
+    }
+    return (WebSocketSession) session.getAttributes().computeIfAbsent(
+        OUTBOUND_ATTRIBUTE,
+        key -> new ConcurrentWebSocketSessionDecorator(session, sendTimeLimitMs, bufferSizeLimit)
+    );
+  }
+
+  public static boolean trySend(WebSocketSession session, WebSocketMessage<?> message) {
+    try {
+      session.sendMessage(message);
+      return true;
+    } catch (SessionLimitExceededException ex) {
+      try {
+        session.close(ex.getStatus());
+      } catch (IOException ignored) {
+      }
+      return false;
+    } catch (IOException ex) {
+      return false;
+    }
+  }
+
+  public boolean underPressure(WebSocketSession session) {
+    return session instanceof ConcurrentWebSocketSessionDecorator decorator
+        && decorator.getBufferSize() >= pressureThreshold;
+  }
+}
@@ -0,0 +1,16 @@
+-- Reescribe los ids aleatorios (UUIDv4) de messages como UUIDv7 derivados de createdAt,
+-- para que el orden por id coincida con el orden cronológico y sirva como cursor.
+-- messages.id no es referenciado por ninguna FK, así que se puede reescribir en sitio.
+USE chatapp;
+
+UPDATE messages
+SET id = LOWER(CONCAT(
+  SUBSTR(LPAD(HEX(createdAt), 12, '0'), 1, 8), '-',
+  SUBSTR(LPAD(HEX(createdAt), 12, '0'), 9, 4), '-',
+  '7', SUBSTR(HEX(RANDOM_BYTES(2)), 1, 3), '-',
+  HEX(8 | (ASCII(RANDOM_BYTES(1)) & 3)), SUBSTR(HEX(RANDOM_BYTES(2)), 1, 3), '-',
+  HEX(RANDOM_BYTES(6))
+))
+WHERE SUBSTR(id, 15, 1) <> '7';
+
+ALTER TABLE messages ADD KEY idx_messages_chat_id (chatId, id);
@@ -0,0 +1,15 @@
+-- Opcional (MySQL 8+): guarda messages.id como BINARY(16) en lugar de CHAR(36).
+-- Requiere haber aplicado 001 y arrancar el backend con APP_IDS_MESSAGE_STORAGE=binary.
+-- UUID_TO_BIN se usa sin el flag de intercambio para conservar el orden temporal de UUIDv7.
+USE chatapp;
+
+ALTER TABLE messages ADD COLUMN id_bin BINARY(16) NULL AFTER id;
+UPDATE messages SET id_bin = UUID_TO_BIN(id);
+ALTER TABLE messages
+  DROP PRIMARY KEY,
+  DROP KEY idx_messages_chat_id,
+  DROP COLUMN id;
+ALTER TABLE messages
+  CHANGE COLUMN id_bin id BINARY(16) NOT NULL FIRST,
+  ADD PRIMARY KEY (id),
+  ADD KEY idx_messages_chat_id (chatId, id);
@@ -0,0 +1,25 @@
+-- Agrega chats.pairKey ("idMenor:idMayor") a los chats directos con un índice único,
+-- para que buscar el chat entre dos usuarios sea una sola lectura indexada
+-- y dos aperturas simultáneas no puedan crear chats duplicados.
+USE chatapp;
+
+ALTER TABLE chats ADD COLUMN pairKey CHAR(73) DEFAULT NULL AFTER type;
+
+UPDATE chats c
+JOIN (
+  SELECT cm.chatId, CONCAT(MIN(cm.userId), ':', MAX(cm.userId)) AS pairKey
+  FROM chat_members cm
+  JOIN chats d ON d.id = cm.chatId AND d.type = 'direct'
+  GROUP BY cm.chatId
+  HAVING COUNT(*) = 2
+) p ON p.chatId = c.id
+SET c.pairKey = p.pairKey;
+
+-- Si ya existían duplicados, solo el más antiguo conserva la clave; los demás siguen visibles sin ella.
+UPDATE chats c
+JOIN chats older
+  ON older.pairKey = c.pairKey
+  AND (older.created_at < c.created_at OR (older.created_at = c.created_at AND older.id < c.id))
+SET c.pairKey = NULL;
+
+ALTER TABLE chats ADD UNIQUE KEY uq_chats_pair_key (pairKey);
@@ -0,0 +1,18 @@
+-- Registra qué chats referencian cada adjunto, para que GET /blobs/{hash}
+-- solo sirva el archivo a miembros de esos chats.
+USE chatapp;
+
+CREATE TABLE IF NOT EXISTS blob_refs (
+  hash CHAR(64) NOT NULL,
+  chatId CHAR(36) NOT NULL,
+  PRIMARY KEY (hash, chatId),
+  KEY chatId (chatId),
+  CONSTRAINT blob_refs_ibfk_1 FOREIGN KEY (chatId) REFERENCES chats (id) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+INSERT IGNORE INTO blob_refs (hash, chatId)
+SELECT DISTINCT JSON_UNQUOTE(JSON_EXTRACT(content, '$.blob')), chatId
+FROM messages
+WHERE kind = 'object'
+  AND JSON_VALID(content)
+  AND JSON_EXTRACT(content, '$.blob') IS NOT NULL;
@@ -18,10 +18,12 @@ CREATE TABLE IF NOT EXISTS users (
 CREATE TABLE IF NOT EXISTS chats (
   id CHAR(36) NOT NULL,
   type ENUM('direct','group') NOT NULL,
+  pairKey CHAR(73) DEFAULT NULL,
   title VARCHAR(80) NOT NULL,
   description TEXT DEFAULT NULL,
   created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
-  PRIMARY KEY (id)
+  PRIMARY KEY (id),
+  UNIQUE KEY uq_chats_pair_key (pairKey)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
 
 CREATE TABLE IF NOT EXISTS chat_members (
@@ -45,6 +47,15 @@ CREATE TABLE IF NOT EXISTS messages (
   PRIMARY KEY (id),
   KEY senderId (senderId),
   KEY idx_messages_chat_created (chatId, createdAt),
+  KEY idx_messages_chat_id (chatId, id),
   CONSTRAINT messages_ibfk_1 FOREIGN KEY (chatId) REFERENCES chats (id) ON DELETE CASCADE,
   CONSTRAINT messages_ibfk_2 FOREIGN KEY (senderId) REFERENCES users (id) ON DELETE CASCADE
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+CREATE TABLE IF NOT EXISTS blob_refs (
+  hash CHAR(64) NOT NULL,
+  chatId CHAR(36) NOT NULL,
+  PRIMARY KEY (hash, chatId),
+  KEY chatId (chatId),
+  CONSTRAINT blob_refs_ibfk_1 FOREIGN KEY (chatId) REFERENCES chats (id) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
@@ -0,0 +1,148 @@
+package com.connectchat.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BlobStoreTest {
+  private static final String HELLO_SHA256 = "b94d27b9934d3e08a52e52d7da7dabfac484efe37a5380ee9088f7ace2efcde9";
+
+  @TempDir
+  Path dir;
+
+  @Test
+  void storesChunksUnderTheirHashOnce() throws IOException {
+    var store = store(1024);
+    for (int i = 0; i < 2; i++) {
+      var upload = store.begin("u1", 11);
+      assertThat(upload.append(bytes("hello "))).isFalse();
+      assertThat(upload.append(bytes("world"))).isTrue();
+      assertThat(upload.commit()).isEqualTo(HELLO_SHA256);
+    }
+    assertThat(store.resolve(HELLO_SHA256)).hasContent("hello world");
+    assertThat(store.retain(HELLO_SHA256)).isEqualTo(11);
+    try (Stream<Path> files = Files.walk(dir)) {
+      assertThat(files.filter(Files::isRegularFile)).hasSize(1);
+    }
+  }
+
+  @Test
+  void rejectsChunksPastDeclaredSizeAndDiscardsTempFile() throws IOException {
+    var store = store(1024);
+    var upload = store.begin("u1", 4);
+    assertThatThrownBy(() -> upload.append(bytes("too long")))
+        .isInstanceOf(IllegalArgumentException.class);
+    try (Stream<Path> files = Files.walk(dir)) {
+      assertThat(files.filter(Files::isRegularFile)).isEmpty();
+    }
+  }
+
+  @Test
+  void rejectsOversizedUploads() {
+    var store = store(8);
+    assertThatThrownBy(() -> store.begin("u1", 9)).isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> store.begin("u1", 0)).isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  void resolvesOnlyWellFormedHashes() {
+    var store = store(8);
+    assertThat(store.resolve("../../etc/passwd")).isNull();
+    assertThat(store.resolve(HELLO_SHA256)).isNull();
+  }
+
+  @Test
+  void capsBytesPerUserWithinTheQuotaWindow() {
+    var store = new BlobStore(dir.toString(), 1024, 1500, 3_600_000);
+    store.begin("u1", 1000).abort();
+    assertThatThrownBy(() -> store.begin("u1", 600))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessageContaining("cuota");
+    store.begin("u1", 500).abort();
+    store.begin("u2", 1000).abort();
+  }
+
+  @Test
+  void purgesIncomingLeftoversOnStartup() throws IOException {
+    var store = store(1024);
+    store.begin("u1", 11).append(bytes("hello "));
+    var committed = store.begin("u1", 11);
+    committed.append(bytes("hello world"));
+    committed.commit();
+
+    new BlobStore(dir.toString(), 1024, 1 << 20, 3_600_000).purgeIncoming();
+
+    try (Stream<Path> files = Files.list(dir.resolve("incoming"))) {
+      assertThat(files).isEmpty();
+    }
+    assertThat(store.resolve(HELLO_SHA256)).isNotNull();
+  }
+
+  @Test
+  void collectsOnlyOldUnreferencedBlobs() throws IOException {
+    var store = store(1024);
+    String orphan = put(store, "orphan");
+    String referenced = put(store, "referenced");
+    String fresh = put(store, "fresh");
+    String retained = put(store, "retained");
+    for (String hash : Set.of(orphan, referenced, retained)) {
+      age(store.resolve(hash));
+    }
+    store.retain(retained);
+    List<Collection<String>> lookups = new ArrayList<>();
+
+    int deleted = store.collect(60_000, hashes -> {
+      lookups.add(List.copyOf(hashes));
+      return hashes.contains(referenced) ? Set.of(referenced) : Set.of();
+    });
+
+    assertThat(deleted).isEqualTo(1);
+    assertThat(store.resolve(orphan)).isNull();
+    assertThat(store.resolve(referenced)).isNotNull();
+    assertThat(store.resolve(fresh)).isNotNull();
+    assertThat(store.resolve(retained)).isNotNull();
+    assertThat(lookups).singleElement().satisfies(hashes -> assertThat(hashes).containsExactlyInAnyOrder(orphan, referenced));
+  }
+
+  @Test
+  void reuploadRestartsTheOrphanClock() throws IOException {
+    var store = store(1024);
+    String hash = put(store, "again");
+    age(store.resolve(hash));
+    put(store, "again");
+
+    assertThat(store.collect(60_000, hashes -> Set.of())).isZero();
+    assertThat(store.resolve(hash)).isNotNull();
+  }
+
+  private BlobStore store(long maxBytes) {
+    return new BlobStore(dir.toString(), maxBytes, 1 << 20, 3_600_000);
+  }
+
+  private static String put(BlobStore store, String text) throws IOException {
+    var upload = store.begin("u1", text.length());
+    upload.append(bytes(text));
+    return upload.commit();
+  }
+
+  private static void age(Path file) throws IOException {
+    Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() - 3_600_000));
+  }
+
+  private static ByteBuffer bytes(String text) {
+    return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,45 @@
+package com.connectchat.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+class BoundedCacheTest {
+  @Test
+  void skipsStaleValueReadBeforeInvalidation() {
+    var cache = new BoundedCache<String, String>(60_000, 10);
+    long observed = cache.version();
+    cache.invalidate("chat");
+    cache.put("chat", "old members", observed);
+    assertThat(cache.get("chat")).isNull();
+
+    cache.put("chat", "new members", cache.version());
+    assertThat(cache.get("chat")).isEqualTo("new members");
+  }
+
+  @Test
+  void invalidateRemovesCachedValue() {
+    var cache = new BoundedCache<String, String>(60_000, 10);
+    cache.put("chat", "members");
+    cache.invalidate("chat");
+    assertThat(cache.get("chat")).isNull();
+  }
+
+  @Test
+  void stopsCachingWhenFull() {
+    var cache = new BoundedCache<String, Integer>(60_000, 2);
+    cache.put("a", 1);
+    cache.put("b", 2);
+    cache.put("c", 3);
+    assertThat(cache.get("c")).isNull();
+    assertThat(cache.get("a")).isEqualTo(1);
+  }
+
+  @Test
+  void expiresEntriesAfterTtl() throws InterruptedException {
+    var cache = new BoundedCache<String, Integer>(20, 10);
+    cache.put("a", 1);
+    Thread.sleep(40);
+    assertThat(cache.get("a")).isNull();
+  }
+}
@@ -0,0 +1,175 @@
+package com.connectchat.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.connectchat.config.ReadYourWritesTracker;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+class ChatDataServiceTest {
+  @AfterEach
+  void clearSynchronization() {
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+  }
+
+  @Test
+  void concurrentOpenReturnsTheWinningChat() throws Exception {
+    // Ambas sesiones ven el par libre antes de insertar: una gana y la otra choca con uq_chats_pair_key.
+    var db = new FakeDb(new CyclicBarrier(2));
+    var service = service(db);
+    var pool = Executors.newFixedThreadPool(2);
+    try {
+      Future<Map<String, Object>> first = pool.submit(() -> service.createDirectChat("a", "b"));
+      Future<Map<String, Object>> second = pool.submit(() -> service.createDirectChat("b", "a"));
+
+      String firstId = (String) first.get(5, TimeUnit.SECONDS).get("id");
+      String secondId = (String) second.get(5, TimeUnit.SECONDS).get("id");
+
+      assertThat(firstId).isEqualTo(secondId);
+      assertThat(db.chats).containsOnlyKeys("a:b").containsEntry("a:b", firstId);
+      assertThat(db.duplicates).hasValue(1);
+      assertThat(db.members).containsExactlyInAnyOrder(firstId + ":a", firstId + ":b");
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  @Test
+  void cachesPairOnlyAfterCommit() {
+    var db = new FakeDb(null);
+    var service = service(db);
+
+    TransactionSynchronizationManager.initSynchronization();
+    service.createDirectChat("a", "b");
+    rollback();
+    TransactionSynchronizationManager.initSynchronization();
+    service.createDirectChat("a", "b");
+    assertThat(db.pairLookups).hasValue(2);
+
+    commit();
+    service.createDirectChat("a", "b");
+    assertThat(db.pairLookups).hasValue(2);
+  }
+
+  @Test
+  void runsWithReadCommittedIsolation() throws Exception {
+    var method = ChatDataService.class.getMethod("createDirectChat", String.class, String.class);
+    assertThat(method.getAnnotation(Transactional.class).isolation()).isEqualTo(Isolation.READ_COMMITTED);
+  }
+
+  @Test
+  void rejectsMalformedMessageCursors() {
+    var service = service(new FakeDb(null));
+
+    for (String cursor : List.of("nope", "1-1-1-1-1", "0190a1b2-c3d4-7e5f-8a6b-7c8d9e0f1a2b'--")) {
+      assertThatThrownBy(() -> service.listMessages("c1", 50, cursor))
+          .isInstanceOf(IllegalArgumentException.class)
+          .hasMessage("cursor inválido");
+    }
+    assertThat(ChatDataService.messageCursor("0190A1B2-C3D4-7E5F-8A6B-7C8D9E0F1A2B"))
+        .isEqualTo("0190a1b2-c3d4-7e5f-8a6b-7c8d9e0f1a2b");
+    assertThat(service.listMessages("c1", 50, null)).isEmpty();
+  }
+
+  private static ChatDataService service(JdbcTemplate jdbc) {
+    return new ChatDataService(jdbc, new IdGenerator(), new PresenceTracker(jdbc, 45_000, 500),
+        new ReadYourWritesTracker(5_000), 200, 500, 20_000, "char", 300_000, 10_000);
+  }
+
+  private static void commit() {
+    var synchronizations = TransactionSynchronizationManager.getSynchronizations();
+    TransactionSynchronizationManager.clearSynchronization();
+    synchronizations.forEach(TransactionSynchronization::afterCommit);
+  }
+
+  private static void rollback() {
+    var synchronizations = TransactionSynchronizationManager.getSynchronizations();
+    TransactionSynchronizationManager.clearSynchronization();
+    synchronizations.forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+  }
+
+  private static final class FakeDb extends JdbcTemplate {
+    private final Map<String, String> chats = new ConcurrentHashMap<>();
+    private final List<String> members = new CopyOnWriteArrayList<>();
+    private final AtomicInteger pairLookups = new AtomicInteger();
+    private final AtomicInteger duplicates = new AtomicInteger();
+    private final CyclicBarrier race;
+
+    FakeDb(CyclicBarrier race) {
+      this.race = race;
+    }
+
+    @Override
+    public <T> T queryForObject(String sql, Class<T> requiredType, Object... args) {
+      return requiredType.cast(sql.contains("FROM users") ? 1 : 2);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> List<T> query(String sql, RowMapper<T> rowMapper, Object... args) {
+      if (sql.contains("WHERE pairKey = ?")) {
+        String chatId = chats.get((String) args[0]);
+        if (pairLookups.incrementAndGet() <= 2 && race != null) {
+          await();
+        }
+        return chatId == null ? List.of() : (List<T>) List.of(chatId);
+      }
+      if (sql.contains("FROM users WHERE id = ?")) {
+        return (List<T>) List.of("Usuario " + args[0]);
+      }
+      if (sql.contains("FROM chats WHERE id = ?")) {
+        if (!chats.containsValue((String) args[0])) {
+          return List.of();
+        }
+        Map<String, Object> chat = new HashMap<>();
+        chat.put("id", args[0]);
+        chat.put("type", "direct");
+        return (List<T>) List.of(chat);
+      }
+      return List.of();
+    }
+
+    @Override
+    public int update(String sql, Object... args) {
+      if (sql.startsWith("INSERT INTO chats")) {
+        if (chats.putIfAbsent((String) args[1], (String) args[0]) != null) {
+          duplicates.incrementAndGet();
+          throw new DuplicateKeyException("Duplicate entry for key 'uq_chats_pair_key'");
+        }
+        return 1;
+      }
+      if (sql.startsWith("INSERT INTO chat_members")) {
+        members.add(args[0] + ":" + args[1]);
+      }
+      return 1;
+    }
+
+    private void await() {
+      try {
+        race.await(5, TimeUnit.SECONDS);
+      } catch (Exception ex) {
+        throw new IllegalStateException(ex);
+      }
+    }
+  }
+}
@@ -0,0 +1,74 @@
+package com.connectchat.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import org.junit.jupiter.api.Test;
+
+class IdGeneratorTest {
+  private final IdGenerator ids = new IdGenerator();
+
+  @Test
+  void setsVersionSevenAndRfcVariant() {
+    for (int i = 0; i < 1000; i++) {
+      UUID id = ids.nextUuid();
+      assertThat(id.version()).isEqualTo(7);
+      assertThat(id.variant()).isEqualTo(2);
+    }
+  }
+
+  @Test
+  void embedsCurrentUnixMillis() {
+    long before = System.currentTimeMillis();
+    UUID id = ids.nextUuid();
+    long after = System.currentTimeMillis();
+    long millis = id.getMostSignificantBits() >>> 16;
+    assertThat(millis).isBetween(before, after + 1);
+  }
+
+  @Test
+  void stringIdsSortInGenerationOrder() {
+    List<String> generated = new ArrayList<>();
+    for (int i = 0; i < 20_000; i++) {
+      generated.add(ids.next());
+    }
+    List<String> sorted = new ArrayList<>(generated);
+    Collections.sort(sorted);
+    assertThat(generated).isEqualTo(sorted);
+    assertThat(new HashSet<>(generated)).hasSize(generated.size());
+  }
+
+  @Test
+  void concurrentCallersNeverCollide() throws InterruptedException {
+    var seen = new ConcurrentLinkedQueue<String>();
+    var start = new CountDownLatch(1);
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < 8; t++) {
+      var thread = new Thread(() -> {
+        try {
+          start.await();
+        } catch (InterruptedException ex) {
+          return;
+        }
+        for (int i = 0; i < 5_000; i++) {
+          seen.add(ids.next());
+        }
+      });
+      thread.start();
+      threads.add(thread);
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    Set<String> unique = new HashSet<>(seen);
+    assertThat(unique).hasSize(40_000);
+  }
+}
@@ -0,0 +1,76 @@
+package com.connectchat.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+class PresenceTrackerTest {
+  private final List<List<Object>> updates = new ArrayList<>();
+  private final JdbcTemplate jdbc = new JdbcTemplate() {
+    @Override
+    public int update(String sql, Object... args) {
+      updates.add(List.of(args));
+      return args.length - 1;
+    }
+  };
+
+  @Test
+  void lateCloseOfAReplacedSocketKeepsTheUserOnline() {
+    var tracker = new PresenceTracker(jdbc, 45_000, 500);
+
+    assertThat(tracker.connected("u1", "old")).isTrue();
+    // Reconexión: el socket nuevo se enlaza antes de que llegue el cierre del viejo.
+    assertThat(tracker.connected("u1", "new")).isFalse();
+    assertThat(tracker.disconnected("u1", "old")).isFalse();
+
+    assertThat(tracker.statusOf("u1")).isEqualTo("online");
+    assertThat(tracker.update("u1", "busy")).isTrue();
+    assertThat(tracker.statusOf("u1")).isEqualTo("busy");
+
+    assertThat(tracker.disconnected("u1", "new")).isTrue();
+    assertThat(tracker.statusOf("u1")).isEqualTo("offline");
+  }
+
+  @Test
+  void ignoresUpdatesForUnknownUsersAndRejectsInvalidStatuses() {
+    var tracker = new PresenceTracker(jdbc, 45_000, 500);
+    tracker.connected("u1", "s1");
+
+    assertThat(tracker.update("ghost", "busy")).isFalse();
+    assertThat(tracker.disconnected("ghost", "s1")).isFalse();
+    assertThatThrownBy(() -> tracker.update("u1", "away")).isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  void expiresUsersWithoutHeartbeats() throws InterruptedException {
+    var tracker = new PresenceTracker(jdbc, 30, 500);
+    tracker.connected("u1", "s1");
+    tracker.connected("u2", "s2");
+
+    Thread.sleep(60);
+    tracker.heartbeat("u2");
+
+    assertThat(tracker.expire()).containsExactly("u1");
+    assertThat(tracker.statusOf("u1")).isEqualTo("offline");
+    assertThat(tracker.statusOf("u2")).isEqualTo("online");
+  }
+
+  @Test
+  void flushesPendingStatusesInBatches() {
+    var tracker = new PresenceTracker(jdbc, 45_000, 2);
+    for (int i = 0; i < 5; i++) {
+      tracker.connected("u" + i, "s" + i);
+    }
+
+    tracker.flush();
+    tracker.flush();
+
+    assertThat(updates).hasSize(3);
+    assertThat(updates).allSatisfy(args -> assertThat(args.get(0)).isEqualTo("online"));
+    assertThat(updates.stream().mapToInt(args -> args.size() - 1).sum()).isEqualTo(5);
+  }
+}
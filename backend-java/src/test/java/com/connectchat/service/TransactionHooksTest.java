@@ -0,0 +1,47 @@
+package com.connectchat.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+class TransactionHooksTest {
+  @AfterEach
+  void tearDown() {
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+  }
+
+  @Test
+  void runsImmediatelyWithoutTransaction() {
+    var runs = new AtomicInteger();
+    TransactionHooks.afterCommit(runs::incrementAndGet);
+    assertThat(runs).hasValue(1);
+  }
+
+  @Test
+  void defersUntilCommit() {
+    var runs = new AtomicInteger();
+    TransactionSynchronizationManager.initSynchronization();
+    TransactionHooks.afterCommit(runs::incrementAndGet);
+    assertThat(runs).hasValue(0);
+
+    TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+    assertThat(runs).hasValue(1);
+  }
+
+  @Test
+  void skipsOnRollback() {
+    var runs = new AtomicInteger();
+    TransactionSynchronizationManager.initSynchronization();
+    TransactionHooks.afterCommit(runs::incrementAndGet);
+
+    TransactionSynchronizationManager.getSynchronizations()
+        .forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+    assertThat(runs).hasValue(0);
+  }
+}
@@ -0,0 +1,103 @@
+package com.connectchat.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+class UserDirectoryTest {
+  private UserDirectory directory;
+
+  @BeforeEach
+  void setUp() {
+    var jdbc = new JdbcTemplate() {
+      @Override
+      public void query(String sql, RowCallbackHandler rch) {
+      }
+    };
+    directory = new UserDirectory(jdbc, new PresenceTracker(jdbc, 45_000, 500), 10);
+  }
+
+  @Test
+  void matchesPrefixesIgnoringCaseAndAccents() {
+    directory.put("u1", "jperez", "José Pérez", null);
+    directory.put("u2", "maria", "María López", null);
+
+    assertThat(ids(directory.search("JOSE", null, 10))).containsExactly("u1");
+    assertThat(ids(directory.search("pér", null, 10))).containsExactly("u1");
+    assertThat(ids(directory.search("lopez", null, 10))).containsExactly("u2");
+    assertThat(ids(directory.search("x", null, 10))).isEmpty();
+  }
+
+  @Test
+  void reportsStatusFromPresence() {
+    directory.put("u1", "ana", "Ana", null);
+    var users = users(directory.search("ana", null, 10));
+    assertThat(users).singleElement().satisfies(user -> assertThat(user.get("status")).isEqualTo("offline"));
+  }
+
+  @Test
+  void pagesWithoutDuplicatesOrGaps() {
+    List<String> expected = new ArrayList<>();
+    for (int i = 0; i < 37; i++) {
+      String id = "u" + i;
+      // Varios tokens por usuario empiezan por "an": cada usuario debe salir una sola vez.
+      directory.put(id, "an" + i, "Ana Andrea " + i, null);
+      expected.add(id);
+    }
+    directory.put("other", "bob", "Bob", null);
+
+    List<String> seen = new ArrayList<>();
+    String cursor = null;
+    int pages = 0;
+    do {
+      var page = directory.search("an", cursor, 10);
+      assertThat(users(page)).hasSizeLessThanOrEqualTo(10);
+      seen.addAll(ids(page));
+      cursor = (String) page.get("nextCursor");
+      pages++;
+    } while (cursor != null && pages < 100);
+
+    assertThat(seen).doesNotHaveDuplicates().containsExactlyInAnyOrderElementsOf(expected);
+  }
+
+  @Test
+  void clampsPageSizeToConfiguredMaximum() {
+    for (int i = 0; i < 15; i++) {
+      directory.put("u" + i, "user" + i, "User " + i, null);
+    }
+    var page = directory.search("user", null, 1000);
+    assertThat(users(page)).hasSize(10);
+    assertThat(page.get("nextCursor")).isNotNull();
+  }
+
+  @Test
+  void rejectsMalformedCursor() {
+    assertThatThrownBy(() -> directory.search("a", "%%%", 10))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("cursor inválido");
+  }
+
+  @Test
+  void reindexesRenamedUser() {
+    directory.put("u1", "old", "Old Name", null);
+    directory.put("u1", "new", "New Name", null);
+    assertThat(ids(directory.search("old", null, 10))).isEmpty();
+    assertThat(ids(directory.search("new", null, 10))).containsExactly("u1");
+  }
+
+  @SuppressWarnings("unchecked")
+  private static List<Map<String, Object>> users(Map<String, Object> page) {
+    return (List<Map<String, Object>>) page.get("users");
+  }
+
+  private static List<String> ids(Map<String, Object> page) {
+    return users(page).stream().map(user -> (String) user.get("id")).toList();
+  }
+}
@@ -0,0 +1,54 @@
+package com.connectchat.ws;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.connectchat.config.RateLimitProperties;
+import com.connectchat.config.RateLimitProperties.Budget;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class EventRateLimiterTest {
+  @Test
+  void bucketAllowsBurstThenRejectsWithWait() {
+    var bucket = new EventRateLimiter.TokenBucket(new Budget(3, 2));
+    long now = System.nanoTime();
+    assertThat(bucket.tryAcquire(now)).isZero();
+    assertThat(bucket.tryAcquire(now)).isZero();
+    assertThat(bucket.tryAcquire(now)).isZero();
+
+    long wait = bucket.tryAcquire(now);
+    assertThat(wait).isPositive().isLessThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(500));
+    assertThat(bucket.tryAcquire(now + wait)).isZero();
+  }
+
+  @Test
+  void limiterReportsRetryAfterMs() {
+    var limiter = new EventRateLimiter(new RateLimitProperties(true, new Budget(2, 1), Map.of()));
+    assertThat(limiter.tryAcquire("user:a", "message:send")).isZero();
+    assertThat(limiter.tryAcquire("user:a", "message:send")).isZero();
+    assertThat(limiter.tryAcquire("user:a", "message:send")).isBetween(1L, 1000L);
+    assertThat(limiter.tryAcquire("user:b", "message:send")).isZero();
+  }
+
+  @Test
+  void unknownEventsShareOneBudget() {
+    var limiter = new EventRateLimiter(new RateLimitProperties(
+        true,
+        new Budget(2, 1),
+        Map.of("typing:update", new Budget(5, 5))
+    ));
+    assertThat(limiter.tryAcquire("user:a", "made:up:1")).isZero();
+    assertThat(limiter.tryAcquire("user:a", "made:up:2")).isZero();
+    assertThat(limiter.tryAcquire("user:a", "made:up:3")).isPositive();
+    assertThat(limiter.tryAcquire("user:a", "typing:update")).isZero();
+  }
+
+  @Test
+  void disabledLimiterNeverRejects() {
+    var limiter = new EventRateLimiter(new RateLimitProperties(false, new Budget(1, 1), Map.of()));
+    for (int i = 0; i < 10; i++) {
+      assertThat(limiter.tryAcquire("user:a", "message:send")).isZero();
+    }
+  }
+}
@@ -0,0 +1,58 @@
+package com.connectchat.ws;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+class RawFrameTest {
+  private final ObjectMapper mapper = new ObjectMapper();
+  private final JsonFactory factory = mapper.getFactory();
+
+  @Test
+  void readsEventAndRoutingFieldsWithoutParsingTheRest() throws IOException {
+    var frame = RawFrame.parse(factory,
+        "{\"event\":\"rtc:signal\",\"data\":{\"chatId\":\"c1\",\"toUserId\":\"u2\",\"sdp\":{\"type\":\"offer\"}}}");
+    assertThat(frame.event()).isEqualTo("rtc:signal");
+    assertThat(frame.dataFields(factory, Set.of("chatId", "toUserId")))
+        .containsEntry("chatId", "c1")
+        .containsEntry("toUserId", "u2");
+  }
+
+  @Test
+  void replacesSpoofedFieldInAnyPosition() throws IOException {
+    String[] payloads = {
+        "{\"event\":\"e\",\"data\":{\"fromUserId\":\"evil\",\"chatId\":\"c1\",\"n\":1}}",
+        "{\"event\":\"e\",\"data\":{\"chatId\":\"c1\", \"fromUserId\" : \"evil\" ,\"n\":1}}",
+        "{\"event\":\"e\",\"data\":{\"chatId\":\"c1\",\"n\":1,\"fromUserId\":\"evil\"}}",
+        "{\"event\":\"e\",\"data\":{\"fromUserId\":\"a\",\"chatId\":\"c1\",\"fromUserId\":\"b\",\"n\":1}}",
+    };
+    for (String payload : payloads) {
+      String data = RawFrame.parse(factory, payload).rawDataWith(factory, "fromUserId", "\"me\"");
+      var node = mapper.readTree(data);
+      assertThat(node.get("fromUserId").asText()).isEqualTo("me");
+      assertThat(node.get("chatId").asText()).isEqualTo("c1");
+      assertThat(node.get("n").asInt()).isEqualTo(1);
+      assertThat(data).doesNotContain("evil").containsOnlyOnce("fromUserId");
+    }
+  }
+
+  @Test
+  void keepsNestedValuesVerbatim() throws IOException {
+    String sdp = "{\"type\":\"offer\",\"fromUserId\":\"nested\",\"sdp\":\"v=0\\r\\n\"}";
+    var frame = RawFrame.parse(factory, "{\"event\":\"e\",\"data\":{\"sdp\":" + sdp + ",\"candidates\":[1, 2,3]}}");
+    String data = frame.rawDataWith(factory, "fromUserId", "\"me\"");
+    assertThat(data).isEqualTo("{\"sdp\":" + sdp + ",\"candidates\":[1, 2,3],\"fromUserId\":\"me\"}");
+  }
+
+  @Test
+  void addsFieldToEmptyOrMissingData() throws IOException {
+    assertThat(RawFrame.parse(factory, "{\"event\":\"e\",\"data\":{ }}").rawDataWith(factory, "fromUserId", "\"me\""))
+        .isEqualTo("{\"fromUserId\":\"me\"}");
+    assertThat(RawFrame.parse(factory, "{\"event\":\"e\"}").rawDataWith(factory, "fromUserId", "\"me\""))
+        .isEqualTo("{\"fromUserId\":\"me\"}");
+  }
+}
@@ -0,0 +1,176 @@
+package com.connectchat.ws;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+class UserEventLogTest {
+  private static final String PREFIX = "{\"event\":\"message:receive\",\"data\":{},\"seq\":";
+
+  @Test
+  void freshSessionGetsEpochAndCurrentSeq() throws IOException {
+    var stream = new UserEventLog(16, 60_000).open("u1");
+    stream.deliver(PREFIX, () -> null);
+
+    var status = stream.resume(null, new RecordingSession().session);
+
+    assertThat(status).containsEntry("status", "fresh").containsEntry("seq", 1L).containsEntry("replayed", 0);
+  }
+
+  @Test
+  void replaysFramesAfterTheResumeToken() throws IOException {
+    var stream = new UserEventLog(16, 60_000).open("u1");
+    String epoch = epoch(stream);
+    for (int i = 0; i < 3; i++) {
+      stream.deliver(PREFIX, () -> null);
+    }
+    var client = new RecordingSession();
+
+    var status = stream.resume(epoch + ".1", client.session);
+
+    assertThat(status).containsEntry("status", "resumed").containsEntry("seq", 3L).containsEntry("replayed", 2);
+    assertThat(client.frames).containsExactly(PREFIX + "2}", PREFIX + "3}");
+  }
+
+  @Test
+  void resetsOnUnknownEpochOrInvalidToken() throws IOException {
+    var stream = new UserEventLog(16, 60_000).open("u1");
+    String epoch = epoch(stream);
+    stream.deliver(PREFIX, () -> null);
+    var client = new RecordingSession();
+
+    for (String token : List.of("otherepoch.0", "garbage", epoch + ".x", epoch + ".9")) {
+      assertThat(stream.resume(token, client.session)).containsEntry("status", "reset");
+    }
+    assertThat(client.frames).isEmpty();
+  }
+
+  @Test
+  void resetsWhenTheGapWasTrimmedByCapacity() throws IOException {
+    var stream = new UserEventLog(3, 60_000).open("u1");
+    String epoch = epoch(stream);
+    for (int i = 0; i < 5; i++) {
+      stream.deliver(PREFIX, () -> null);
+    }
+    var client = new RecordingSession();
+
+    assertThat(stream.resume(epoch + ".1", client.session)).containsEntry("status", "reset");
+    assertThat(stream.resume(epoch + ".2", client.session)).containsEntry("status", "resumed");
+    assertThat(client.frames).containsExactly(PREFIX + "3}", PREFIX + "4}", PREFIX + "5}");
+  }
+
+  @Test
+  void trimsFramesOlderThanTheGracePeriod() throws Exception {
+    var stream = new UserEventLog(16, 50).open("u1");
+    String epoch = epoch(stream);
+    stream.deliver(PREFIX, () -> null);
+    Thread.sleep(80);
+    stream.deliver(PREFIX, () -> null);
+    var client = new RecordingSession();
+
+    assertThat(stream.resume(epoch + ".0", client.session)).containsEntry("status", "reset");
+    assertThat(stream.resume(epoch + ".1", client.session)).containsEntry("status", "resumed");
+    assertThat(client.frames).containsExactly(PREFIX + "2}");
+  }
+
+  @Test
+  void dropsStreamsDisconnectedLongerThanTheGracePeriod() throws Exception {
+    var log = new UserEventLog(16, 50);
+    log.open("u1");
+
+    assertThat(log.closed("u1", () -> true)).isTrue();
+    Thread.sleep(80);
+    log.open("u2");
+
+    assertThat(log.find("u1")).isNull();
+  }
+
+  @Test
+  void lateCloseOfAReplacedSocketKeepsTheStream() throws Exception {
+    var log = new UserEventLog(16, 50);
+    var stream = log.open("u1");
+
+    // El socket viejo ya no está registrado: detach no quita nada y el stream sigue vivo.
+    assertThat(log.closed("u1", () -> false)).isFalse();
+    Thread.sleep(80);
+    log.open("u2");
+
+    assertThat(log.find("u1")).isSameAs(stream);
+  }
+
+  @Test
+  void rebindClearsACloseMarkedBeforeIt() throws Exception {
+    var log = new UserEventLog(16, 50);
+    var stream = log.open("u1");
+
+    log.closed("u1", () -> true);
+    stream.resume(null, new RecordingSession().session);
+    Thread.sleep(80);
+    log.open("u2");
+
+    assertThat(log.find("u1")).isSameAs(stream);
+  }
+
+  @Test
+  void deliverResolvesTheSessionBoundDuringReplay() throws Exception {
+    var stream = new UserEventLog(16, 60_000).open("u1");
+    var bound = new AtomicReference<WebSocketSession>();
+    var client = new RecordingSession();
+    var binding = new CountDownLatch(1);
+
+    var binder = new Thread(() -> {
+      synchronized (stream) {
+        binding.countDown();
+        sleep(50);
+        bound.set(client.session);
+      }
+    });
+    binder.start();
+    assertThat(binding.await(5, TimeUnit.SECONDS)).isTrue();
+    stream.deliver(PREFIX, bound::get);
+    binder.join();
+
+    assertThat(client.frames).containsExactly(PREFIX + "1}");
+  }
+
+  private static String epoch(UserEventLog.Stream stream) throws IOException {
+    return (String) stream.resume(null, new RecordingSession().session).get("epoch");
+  }
+
+  private static void sleep(long ms) {
+    try {
+      Thread.sleep(ms);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static final class RecordingSession {
+    private final List<String> frames = new CopyOnWriteArrayList<>();
+    private final WebSocketSession session = (WebSocketSession) Proxy.newProxyInstance(
+        WebSocketSession.class.getClassLoader(),
+        new Class<?>[] {WebSocketSession.class},
+        (proxy, method, args) -> switch (method.getName()) {
+          case "sendMessage" -> {
+            frames.add(((TextMessage) args[0]).getPayload());
+            yield null;
+          }
+          case "isOpen" -> true;
+          case "getAttributes" -> Map.of();
+          case "hashCode" -> System.identityHashCode(proxy);
+          case "equals" -> proxy == args[0];
+          default -> null;
+        }
+    );
+  }
+}
@@ -11,6 +11,8 @@ export interface Chat {
   type: 'direct' | 'group';
   title: string;
   members: User[];
+  memberCount?: number;
+  membersTruncated?: boolean;
   lastMessage?: Message;
   description?: string;
 }
@@ -45,11 +47,18 @@ export type WsEvent =
   | 'chat:created'
   | 'chat:updated'
   | 'user:list'
+  | 'user:search'
   | 'group:create'
   | 'group:invite'
+  | 'group:import'
   | 'message:send'
   | 'message:receive'
   | 'message:list'
   | 'rtc:signal'
   | 'presence:update'
+  | 'presence:heartbeat'
+  | 'typing:update'
+  | 'session:resume'
+  | 'blob:begin'
+  | 'blob:complete'
   | 'error';